@@ -0,0 +1,411 @@
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.map.MapSecondary;
+
+/**
+ * JMH benchmarks for the kernel methods of {@code Map4}, at the hash table
+ * sizes the test fixtures use (73, 100, 1009, 1000009) held fixed and at the
+ * default size left to grow by load factor, against {@code Map1L} and
+ * {@code java.util.HashMap} (behind the same {@code Map} interface). Lookups
+ * and counting draw their keys either uniformly or from a Zipf distribution,
+ * like words in text.
+ *
+ * <p>
+ * Run with bench.sh in the repository root, which compiles the sources
+ * and benchmarks with the components library and JMH (with its
+ * annotation processor) and runs them from this directory, e.g.
+ *
+ * <pre>
+ * ./bench.sh MapWithHashing/MapWithHashing MapBenchmark -prof gc
+ * </pre>
+ *
+ * Every benchmark does a whole workload over {@code keyCount} keys, so divide
+ * its time by {@code keyCount} for the time per call. {@code Map1L} searches
+ * linearly, so a workload takes time quadratic in the number of keys; it is
+ * run with at most {@code MAP1L_KEY_COUNT} keys whatever {@code keyCount}
+ * says, and its times must be divided by that instead.
+ *
+ * @author Charan Nanduri and Evan Frisbie
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapBenchmark {
+
+    /**
+     * Exponent of the Zipf distribution; 1 is typical of words in text.
+     */
+    private static final double ZIPF_EXPONENT = 1.0;
+
+    /**
+     * Load factor that keeps a {@code Map4} table from ever growing, so the
+     * sized variants measure that table size and not where growth took it.
+     */
+    private static final float FIXED_SIZE = Float.POSITIVE_INFINITY;
+
+    /**
+     * Seed for the key streams, so every run gets the same ones.
+     */
+    private static final long SEED = 2231;
+
+    /**
+     * Largest number of distinct keys {@code Map1L} is run with; at 100000 a
+     * single lookup workload takes seconds.
+     */
+    private static final int MAP1L_KEY_COUNT = 1000;
+
+    /**
+     * Map implementation under test: {@code Map4} with a given hash table
+     * size that never changes, {@code Map4} with the default size and the
+     * default growth, {@code Map1L}, or {@code HashMap}.
+     */
+    @Param({ "Map4-73", "Map4-100", "Map4-1009", "Map4-1000009",
+            "Map4-default", "Map1L", "HashMap" })
+    private String implementation;
+
+    /**
+     * How lookup and counting keys are drawn.
+     */
+    @Param({ "uniform", "zipf" })
+    private String distribution;
+
+    /**
+     * Number of distinct keys.
+     */
+    @Param({ "100000" })
+    private int keyCount;
+
+    /**
+     * The distinct keys, in insertion order.
+     */
+    private String[] keys;
+
+    /**
+     * Keys to look up or count, drawn from {@code keys}.
+     */
+    private String[] stream;
+
+    /**
+     * Map holding every key, for the lookups.
+     */
+    private Map<String, Integer> full;
+
+    /**
+     * Creates an empty map of the implementation under test.
+     *
+     * @return the new map
+     */
+    private Map<String, Integer> newMap() {
+        Map<String, Integer> result;
+        if (this.implementation.equals("Map4-default")) {
+            result = new Map4<String, Integer>();
+        } else if (this.implementation.startsWith("Map4-")) {
+            result = new Map4<String, Integer>(
+                    Integer.parseInt(this.implementation.substring(5)),
+                    FIXED_SIZE, false);
+        } else if (this.implementation.equals("Map1L")) {
+            result = new Map1L<String, Integer>();
+        } else {
+            result = new HashMapAdapter<String, Integer>();
+        }
+        return result;
+    }
+
+    /**
+     * Creates a map of the implementation under test holding every key.
+     *
+     * @return the new map
+     */
+    private Map<String, Integer> filledMap() {
+        Map<String, Integer> result = this.newMap();
+        for (int i = 0; i < this.keys.length; i++) {
+            result.add(this.keys[i], i);
+        }
+        return result;
+    }
+
+    /**
+     * Builds the keys, the key stream, and the full map.
+     */
+    @Setup
+    public void setUp() {
+        if (this.implementation.equals("Map1L")) {
+            this.keyCount = Math.min(this.keyCount, MAP1L_KEY_COUNT);
+        }
+        this.keys = new String[this.keyCount];
+        for (int i = 0; i < this.keyCount; i++) {
+            this.keys[i] = "word" + i;
+        }
+
+        Random random = new Random(SEED);
+        this.stream = new String[this.keyCount];
+        if (this.distribution.equals("zipf")) {
+            // Cumulative weights of ranks 1..keyCount, searched per draw
+            double[] cumulative = new double[this.keyCount];
+            double total = 0;
+            for (int i = 0; i < this.keyCount; i++) {
+                total += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+                cumulative[i] = total;
+            }
+            for (int i = 0; i < this.keyCount; i++) {
+                double u = random.nextDouble() * total;
+                int lo = 0;
+                int hi = this.keyCount - 1;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (cumulative[mid] < u) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                this.stream[i] = this.keys[lo];
+            }
+        } else {
+            for (int i = 0; i < this.keyCount; i++) {
+                this.stream[i] = this.keys[random.nextInt(this.keyCount)];
+            }
+        }
+
+        this.full = this.filledMap();
+    }
+
+    /**
+     * Map holding every key, refilled before every call of a benchmark that
+     * empties it. It is a state of its own so the other benchmarks do not pay
+     * for the refill.
+     */
+    @State(Scope.Thread)
+    public static class Filled {
+
+        /**
+         * The map.
+         */
+        private Map<String, Integer> map;
+
+        /**
+         * Refills the map.
+         *
+         * @param bench
+         *            the benchmark state with the implementation and keys
+         */
+        @Setup(Level.Invocation)
+        public void refill(MapBenchmark bench) {
+            this.map = bench.filledMap();
+        }
+
+    }
+
+    /**
+     * Adding every key to an empty map.
+     *
+     * @return the filled map
+     */
+    @Benchmark
+    public Map<String, Integer> add() {
+        return this.filledMap();
+    }
+
+    /**
+     * Looking up every key of the stream with {@code hasKey}.
+     *
+     * @return number of keys found
+     */
+    @Benchmark
+    public int hasKey() {
+        int found = 0;
+        for (String key : this.stream) {
+            if (this.full.hasKey(key)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Looking up the value of every key of the stream.
+     *
+     * @param hole
+     *            consumes the values
+     */
+    @Benchmark
+    public void value(Blackhole hole) {
+        for (String key : this.stream) {
+            hole.consume(this.full.value(key));
+        }
+    }
+
+    /**
+     * Counting the keys of the stream the way {@code TagCloudGenerator}
+     * counts words, into an empty map.
+     *
+     * @return the counts
+     */
+    @Benchmark
+    public Map<String, Integer> count() {
+        Map<String, Integer> counts = this.newMap();
+        for (String key : this.stream) {
+            if (counts.hasKey(key)) {
+                counts.replaceValue(key, counts.value(key) + 1);
+            } else {
+                counts.add(key, 1);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Removing every key, in insertion order.
+     *
+     * @param filled
+     *            the map to empty
+     * @param hole
+     *            consumes the removed pairs
+     */
+    @Benchmark
+    public void remove(Filled filled, Blackhole hole) {
+        for (String key : this.keys) {
+            hole.consume(filled.map.remove(key));
+        }
+    }
+
+    /**
+     * Draining the map with {@code removeAny}.
+     *
+     * @param filled
+     *            the map to empty
+     * @param hole
+     *            consumes the removed pairs
+     */
+    @Benchmark
+    public void removeAny(Filled filled, Blackhole hole) {
+        while (filled.map.size() > 0) {
+            hole.consume(filled.map.removeAny());
+        }
+    }
+
+    /**
+     * {@code Map} on a {@code java.util.HashMap}, so it runs the same
+     * workloads through the same interface.
+     *
+     * @param <K>
+     *            type of {@code Map} domain (key) entries
+     * @param <V>
+     *            type of {@code Map} range (associated value) entries
+     */
+    public static final class HashMapAdapter<K, V> extends MapSecondary<K, V> {
+
+        /**
+         * The wrapped map.
+         */
+        private java.util.Map<K, V> rep = new HashMap<K, V>();
+
+        /**
+         * Iterator {@code removeAny} removes through, or null if the map has
+         * changed otherwise since; restarting it every time would make a
+         * drain quadratic.
+         */
+        private Iterator<java.util.Map.Entry<K, V>> drain = null;
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Map<K, V> newInstance() {
+            return new HashMapAdapter<K, V>();
+        }
+
+        @Override
+        public void clear() {
+            this.rep = new HashMap<K, V>();
+            this.drain = null;
+        }
+
+        @Override
+        public void transferFrom(Map<K, V> source) {
+            HashMapAdapter<K, V> localSource = (HashMapAdapter<K, V>) source;
+            this.rep = localSource.rep;
+            this.drain = null;
+            localSource.rep = new HashMap<K, V>();
+            localSource.drain = null;
+        }
+
+        @Override
+        public void add(K key, V value) {
+            this.rep.put(key, value);
+            this.drain = null;
+        }
+
+        @Override
+        public Pair<K, V> remove(K key) {
+            this.drain = null;
+            return new SimplePair<K, V>(key, this.rep.remove(key));
+        }
+
+        @Override
+        public Pair<K, V> removeAny() {
+            if (this.drain == null) {
+                this.drain = this.rep.entrySet().iterator();
+            }
+            java.util.Map.Entry<K, V> entry = this.drain.next();
+            this.drain.remove();
+            return new SimplePair<K, V>(entry.getKey(), entry.getValue());
+        }
+
+        @Override
+        public V value(K key) {
+            return this.rep.get(key);
+        }
+
+        @Override
+        public boolean hasKey(K key) {
+            return this.rep.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return this.rep.size();
+        }
+
+        @Override
+        public Iterator<Pair<K, V>> iterator() {
+            final Iterator<java.util.Map.Entry<K, V>> it = this.rep.entrySet()
+                    .iterator();
+            return new Iterator<Pair<K, V>>() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public Pair<K, V> next() {
+                    java.util.Map.Entry<K, V> entry = it.next();
+                    return new SimplePair<K, V>(entry.getKey(),
+                            entry.getValue());
+                }
+            };
+        }
+
+    }
+
+}
@@ -1,5 +1,12 @@
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.IntUnaryOperator;
 
 import components.map.Map;
 import components.map.Map1L;
@@ -7,7 +14,12 @@ import components.map.MapSecondary;
 
 /**
  * {@code Map} represented as a hash table using {@code Map}s for the buckets,
- * with implementations of primary methods.
+ * with implementations of primary methods. Hash codes go through a spreading
+ * function before they are reduced to a bucket index; the default one mixes
+ * every bit of the hash code into every bit of the result, so keys with
+ * clustered or patterned hash codes still fill the buckets evenly. Buckets
+ * are only created by the first {@code add} into them, so an empty map is a
+ * single array of nulls.
  *
  * @param <K>
  *            type of {@code Map} domain (key) entries
@@ -19,15 +31,21 @@ import components.map.MapSecondary;
  *     where (0 <= i  and  i < |$this.hashTable|  and
  *            <pf> = $this.hashTable[i, i+1)  and
  *            x is in DOMAIN(pf))
- *   ([computed result of x.hashCode()] mod |$this.hashTable| = i))  and
- * for all i: integer
- *     where (0 <= i  and  i < |$this.hashTable|)
- *   ([entry at position i in $this.hashTable is not null])  and
+ *   ([computed result of $this.spreader applied to x.hashCode(), as an
+ *     unsigned integer] mod |$this.hashTable| = i))  and
  * $this.size = sum i: integer, pf: PARTIAL_FUNCTION
  *     where (0 <= i  and  i < |$this.hashTable|  and
  *            <pf> = $this.hashTable[i, i+1))
- *   (|pf|)
+ *   (|pf|)  and
+ * 0 < $this.loadFactor  and
+ * $this.size <= $this.loadFactor * |$this.hashTable|  and
+ * |$this.hashTable| >= $this.minimumSize  and
+ * 0 <= $this.cursor  and  $this.cursor < |$this.hashTable|  and
+ * if $this.shrink  and  |$this.hashTable| > $this.minimumSize then
+ *   $this.size >= $this.loadFactor * |$this.hashTable| / 4
  * </pre>
+ * where, here and below, a null entry of $this.hashTable stands for the
+ * empty bucket {}
  * @correspondence <pre>
  * this = union i: integer, pf: PARTIAL_FUNCTION
  *            where (0 <= i  and  i < |$this.hashTable|  and
@@ -49,6 +67,27 @@ public class Map4<K, V> extends MapSecondary<K, V> {
      */
     private static final int DEFAULT_HASH_TABLE_SIZE = 101;
 
+    /**
+     * Default largest ratio of entries to buckets before the table grows.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The table shrinks when the ratio of entries to buckets drops below the
+     * load factor divided by this.
+     */
+    private static final int SHRINK_DIVISOR = 4;
+
+    /**
+     * Largest table size; the largest prime below Integer.MAX_VALUE - 8.
+     */
+    private static final int MAX_HASH_TABLE_SIZE = 2147483629;
+
+    /**
+     * Default hash spreading function.
+     */
+    static final IntUnaryOperator DEFAULT_SPREADER = Map4::mix;
+
     /**
      * Buckets for hashing.
      */
@@ -60,30 +99,179 @@ public class Map4<K, V> extends MapSecondary<K, V> {
     private int size;
 
     /**
-     * Computes {@code a} mod {@code b} as % should have been defined to work. -
-     * DONE
+     * Bucket {@code removeAny} starts looking at.
+     */
+    private int cursor;
+
+    /**
+     * Number of structural changes so far, so iterators can tell they are
+     * out of date.
+     */
+    private int modCount;
+
+    /**
+     * Largest ratio of entries to buckets before the table grows.
+     */
+    private float loadFactor;
+
+    /**
+     * Size the table starts at, and never shrinks below.
+     */
+    private int minimumSize;
+
+    /**
+     * Whether the table shrinks again after mass removals.
+     */
+    private boolean shrink;
+
+    /**
+     * Function applied to hash codes before they are reduced to a bucket
+     * index.
+     */
+    private IntUnaryOperator spreader;
+
+    /**
+     * Mixes the bits of a hash code with the MurmurHash3 finalizer, so every
+     * input bit affects every output bit.
+     *
+     * @param h
+     *            the hash code
+     * @return the mixed hash code
+     */
+    static int mix(int h) {
+        int x = h;
+        x ^= x >>> 16;
+        x *= 0x85ebca6b;
+        x ^= x >>> 13;
+        x *= 0xc2b2ae35;
+        x ^= x >>> 16;
+        return x;
+    }
+
+    /**
+     * Returns the bucket {@code key} belongs in, in a table of {@code length}
+     * buckets.
      *
-     * @param a
-     *            the number being reduced
-     * @param b
-     *            the modulus
-     * @return the result of a mod b, which satisfies 0 <= {@code mod} < b
-     * @requires b > 0
+     * @param key
+     *            the key
+     * @param length
+     *            the size of the hash table
+     * @return the index of the bucket, which satisfies 0 <= index < length
+     * @requires length > 0
+     */
+    private int bucket(Object key, int length) {
+        // Taking the spread hash code as unsigned makes it non-negative
+        // without a second %
+        return Integer.remainderUnsigned(
+                this.spreader.applyAsInt(key.hashCode()), length);
+    }
+
+    /**
+     * Returns the smallest prime that is at least {@code n}.
+     *
+     * @param n
+     *            the lower bound
+     * @return the smallest prime >= n, or {@code MAX_HASH_TABLE_SIZE} if
+     *         there is none below it
+     * @requires n > 0
+     */
+    private static int nextPrime(int n) {
+        assert n > 0 : "Violation of: n > 0";
+
+        int candidate = Math.max(n, 2);
+        boolean prime = false;
+        while (!prime && candidate < MAX_HASH_TABLE_SIZE) {
+            prime = true;
+            for (int d = 2; prime && (long) d * d <= candidate; d++) {
+                prime = candidate % d != 0;
+            }
+            if (!prime) {
+                candidate++;
+            }
+        }
+        return Math.min(candidate, MAX_HASH_TABLE_SIZE);
+    }
+
+    /**
+     * Moves every entry into a new table of {@code newSize} buckets.
+     *
+     * @param newSize
+     *            the size of the new hash table
+     * @updates $this.hashTable
+     * @requires newSize > 0
      * @ensures <pre>
-     * 0 <= mod  and  mod < b  and
-     * there exists k: integer (a = k * b + mod)
+     * |$this.hashTable| = newSize  and  this = #this
      * </pre>
      */
-    private static int mod(int a, int b) {
-        assert b > 0 : "Violation of: b > 0";
-        //possible way, although it is throwing an error.
-        /*
-         * if (a < 0) { a = -a; } if (b < 0) { b = -b; }
-         *
-         * int result = a % b;
-         */
-        // this way ensures mod instead of remainder, even with neg values.
-        return (((a % b) + b) % b);
+    @SuppressWarnings("unchecked")
+    private void rehash(int newSize) {
+        assert newSize > 0 : "Violation of: newSize > 0";
+
+        Map<K, V>[] oldTable = this.hashTable;
+        this.hashTable = new MapSecondary[newSize];
+        this.cursor = 0;
+
+        // Move the pairs bucket by bucket, emptying the old table as we go
+        for (Map<K, V> bucket : oldTable) {
+            while (bucket != null && bucket.size() > 0) {
+                Pair<K, V> pair = bucket.removeAny();
+                int location = this.bucket(pair.key(), newSize);
+                this.bucketAt(location).add(pair.key(), pair.value());
+            }
+        }
+    }
+
+    /**
+     * Returns bucket {@code location}, creating it first if this is the
+     * first time it is used.
+     *
+     * @param location
+     *            the index of the bucket
+     * @return the bucket at {@code location}
+     * @requires 0 <= location < |$this.hashTable|
+     * @ensures bucketAt = $this.hashTable[location]  and
+     *          bucketAt /= null
+     */
+    private Map<K, V> bucketAt(int location) {
+        Map<K, V> result = this.hashTable[location];
+        if (result == null) {
+            result = new Map1L<K, V>();
+            this.hashTable[location] = result;
+        }
+        return result;
+    }
+
+    /**
+     * Grows the table to the next prime at least twice its size if there are
+     * more than {@code $this.loadFactor} entries per bucket.
+     *
+     * @updates $this.hashTable
+     * @ensures this = #this
+     */
+    private void growIfNeeded() {
+        int length = this.hashTable.length;
+        if (this.size > this.loadFactor * length
+                && length < MAX_HASH_TABLE_SIZE) {
+            this.rehash(nextPrime(
+                    (int) Math.min(2L * length + 1, MAX_HASH_TABLE_SIZE)));
+        }
+    }
+
+    /**
+     * Shrinks the table to about half its size, but not below
+     * {@code $this.minimumSize}, if shrinking is turned on and there are
+     * fewer than {@code $this.loadFactor / SHRINK_DIVISOR} entries per
+     * bucket.
+     *
+     * @updates $this.hashTable
+     * @ensures this = #this
+     */
+    private void shrinkIfNeeded() {
+        int length = this.hashTable.length;
+        if (this.shrink && length > this.minimumSize
+                && this.size < this.loadFactor * length / SHRINK_DIVISOR) {
+            this.rehash(Math.max(this.minimumSize, nextPrime(length / 2)));
+        }
     }
 
     /**
@@ -94,10 +282,8 @@ public class Map4<K, V> extends MapSecondary<K, V> {
      * @requires hashTableSize > 0
      * @ensures <pre>
      * |$this.hashTable| = hashTableSize  and
-     * for all i: integer
-     *     where (0 <= i  and  i < |$this.hashTable|)
-     *   ($this.hashTable[i, i+1) = <{}>)  and
-     * $this.size = 0
+     * [all entries of $this.hashTable are null]  and
+     * $this.size = 0  and  $this.cursor = 0
      * </pre>
      */
     @SuppressWarnings("unchecked")
@@ -109,9 +295,8 @@ public class Map4<K, V> extends MapSecondary<K, V> {
          */
         this.hashTable = new MapSecondary[hashTableSize];
         this.size = 0;
-        for (int i = 0; i < hashTableSize; i++) {
-            this.hashTable[i] = new Map1L<K, V>();
-        }
+        this.cursor = 0;
+        this.modCount++;
 
     }
 
@@ -124,7 +309,8 @@ public class Map4<K, V> extends MapSecondary<K, V> {
      */
     public Map4() {
 
-        this.createNewRep(DEFAULT_HASH_TABLE_SIZE);
+        this(DEFAULT_HASH_TABLE_SIZE, DEFAULT_LOAD_FACTOR, false,
+                DEFAULT_SPREADER);
 
     }
 
@@ -138,8 +324,59 @@ public class Map4<K, V> extends MapSecondary<K, V> {
      * @ensures this = {}
      */
     public Map4(int hashTableSize) {
+
+        this(hashTableSize, DEFAULT_LOAD_FACTOR, false, DEFAULT_SPREADER);
+
+    }
+
+    /**
+     * Constructor resulting in a hash table of size {@code hashTableSize}
+     * that grows whenever there are more than {@code loadFactor} entries per
+     * bucket and, if {@code shrink}, shrinks back towards
+     * {@code hashTableSize} after mass removals.
+     *
+     * @param hashTableSize
+     *            initial (and smallest) size of hash table
+     * @param loadFactor
+     *            largest ratio of entries to buckets
+     * @param shrink
+     *            whether the table shrinks when it gets sparse
+     * @requires hashTableSize > 0 and loadFactor > 0
+     * @ensures this = {}
+     */
+    public Map4(int hashTableSize, float loadFactor, boolean shrink) {
+
+        this(hashTableSize, loadFactor, shrink, DEFAULT_SPREADER);
+
+    }
+
+    /**
+     * Constructor like {@code Map4(hashTableSize, loadFactor, shrink)}, with
+     * {@code spreader} applied to every hash code before it is reduced to a
+     * bucket index. Pass {@code IntUnaryOperator.identity()} to use hash codes
+     * as they are.
+     *
+     * @param hashTableSize
+     *            initial (and smallest) size of hash table
+     * @param loadFactor
+     *            largest ratio of entries to buckets
+     * @param shrink
+     *            whether the table shrinks when it gets sparse
+     * @param spreader
+     *            hash spreading function; must be a pure function
+     * @requires hashTableSize > 0 and loadFactor > 0 and spreader /= null
+     * @ensures this = {}
+     */
+    public Map4(int hashTableSize, float loadFactor, boolean shrink,
+            IntUnaryOperator spreader) {
         assert hashTableSize > 0 : "Hash Table Size must be greater than 0.";
+        assert loadFactor > 0 : "Load factor must be greater than 0.";
+        assert spreader != null : "Violation of: spreader is not null";
 
+        this.spreader = spreader;
+        this.loadFactor = loadFactor;
+        this.minimumSize = hashTableSize;
+        this.shrink = shrink;
         this.createNewRep(hashTableSize);
 
     }
@@ -161,7 +398,7 @@ public class Map4<K, V> extends MapSecondary<K, V> {
 
     @Override
     public final void clear() {
-        this.createNewRep(DEFAULT_HASH_TABLE_SIZE);
+        this.createNewRep(this.minimumSize);
     }
 
     @Override
@@ -176,9 +413,15 @@ public class Map4<K, V> extends MapSecondary<K, V> {
          * the ?,? must be K,V or the call would not have compiled.
          */
         Map4<K, V> localSource = (Map4<K, V>) source;
+        this.modCount++;
         this.hashTable = localSource.hashTable;
         this.size = localSource.size;
-        localSource.createNewRep(DEFAULT_HASH_TABLE_SIZE);
+        this.cursor = localSource.cursor;
+        this.loadFactor = localSource.loadFactor;
+        this.minimumSize = localSource.minimumSize;
+        this.shrink = localSource.shrink;
+        this.spreader = localSource.spreader;
+        localSource.createNewRep(localSource.minimumSize);
     }
 
     /*
@@ -192,10 +435,12 @@ public class Map4<K, V> extends MapSecondary<K, V> {
         assert value != null : "Violation of: value is not null";
         assert !this.hasKey(key) : "Violation of: key is not in DOMAIN(this)";
 
-        // Hash the key and get a location from mod
-        int location = mod(key.hashCode(), this.hashTable.length);
-        this.hashTable[location].add(key, value);
+        // Hash the key and get a location from it
+        int location = this.bucket(key, this.hashTable.length);
+        this.bucketAt(location).add(key, value);
         this.size++;
+        this.modCount++;
+        this.growIfNeeded();
     }
 
     // DONE
@@ -206,7 +451,7 @@ public class Map4<K, V> extends MapSecondary<K, V> {
 
         Pair<K, V> result = null;
 
-        int location = mod(key.hashCode(), this.hashTable.length);
+        int location = this.bucket(key, this.hashTable.length);
         Map<K, V> hashList = this.hashTable[location];
 
         if (hashList == null) {
@@ -214,9 +459,11 @@ public class Map4<K, V> extends MapSecondary<K, V> {
         } else {
             result = hashList.remove(key);
             this.size -= 1;
+            this.modCount++;
+            this.shrinkIfNeeded();
         }
         return result;
-        //return this.hashTable[mod(key.hashCode(), this.hashTable.length)]
+        //return this.hashTable[this.bucket(key, this.hashTable.length)]
         //        .remove(key); could also work
     }
 
@@ -225,14 +472,18 @@ public class Map4<K, V> extends MapSecondary<K, V> {
     public final Pair<K, V> removeAny() {
         assert this.size() > 0 : "Violation of: this /= empty_set";
 
-        int i = 0;
-        Map<K, V> hashList = this.hashTable[i];
-        while (hashList.size() == 0) {
-            i++;
-            hashList = this.hashTable[i];
+        // Resume from the bucket the last pair came from, so draining the
+        // map sweeps the table once instead of rescanning it from bucket 0
+        Map<K, V> hashList = this.hashTable[this.cursor];
+        while (hashList == null || hashList.size() == 0) {
+            this.cursor = (this.cursor + 1) % this.hashTable.length;
+            hashList = this.hashTable[this.cursor];
         }
         this.size--;
-        return hashList.removeAny();
+        this.modCount++;
+        Pair<K, V> result = hashList.removeAny();
+        this.shrinkIfNeeded();
+        return result;
     }
 
     // DONE
@@ -242,7 +493,7 @@ public class Map4<K, V> extends MapSecondary<K, V> {
         assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
 
         int length = this.hashTable.length;
-        int location = mod(key.hashCode(), length);
+        int location = this.bucket(key, length);
 
         V result = this.hashTable[location].value(key);
 
@@ -255,12 +506,14 @@ public class Map4<K, V> extends MapSecondary<K, V> {
         assert key != null : "Violation of: key is not null";
 
         int length = this.hashTable.length;
-        int hashed = key.hashCode();
-        int location = mod(hashed, length);
+        int location = this.bucket(key, length);
 
         boolean result = false;
 
-        result = this.hashTable[location].hasKey(key);
+        Map<K, V> hashList = this.hashTable[location];
+        if (hashList != null) {
+            result = hashList.hasKey(key);
+        }
 
         return result;
     }
@@ -268,25 +521,392 @@ public class Map4<K, V> extends MapSecondary<K, V> {
     // DONE
     @Override
     public final int size() {
+        return this.size;
+    }
+
+    @Override
+    public final Iterator<Pair<K, V>> iterator() {
+        return new Map4Iterator();
+    }
 
-        int result = 0;
+    /**
+     * Returns a {@code Spliterator} over the pairs of {@code this} that splits
+     * by ranges of buckets, e.g. for
+     * {@code StreamSupport.stream(map.spliterator(), true)}. Like the
+     * iterator, it throws {@code ConcurrentModificationException} if
+     * {@code this} is changed while it is in use.
+     *
+     * @return a spliterator over the pairs of {@code this}
+     */
+    @Override
+    public final Spliterator<Pair<K, V>> spliterator() {
+        return new Map4Spliterator(0, this.hashTable.length);
+    }
+
+    /*
+     * Bulk operations --------------------------------------------------------
+     */
+
+    /**
+     * Grows the table, if needed, so {@code extra} more entries fit without
+     * growing again.
+     *
+     * @param extra
+     *            number of entries about to be added
+     * @updates $this.hashTable
+     * @requires extra >= 0
+     * @ensures this = #this
+     */
+    final void reserve(int extra) {
+        long needed = (long) Math.ceil((this.size + (long) extra)
+                / (double) this.loadFactor);
+        if (needed > this.hashTable.length) {
+            this.rehash(nextPrime((int) Math.min(
+                    Math.max(needed, 2L * this.hashTable.length + 1),
+                    MAX_HASH_TABLE_SIZE)));
+        }
+    }
+
+    /**
+     * Adds every pair of {@code pairs} to {@code this}. The table is grown
+     * once up front for {@code sizeHint} pairs, and every key is hashed only
+     * once.
+     *
+     * @param pairs
+     *            the pairs to add
+     * @param sizeHint
+     *            expected number of pairs, or 0 if unknown
+     * @updates this
+     * @requires <pre>
+     * pairs /= null  and  sizeHint >= 0  and
+     * [keys and values of pairs are not null]  and
+     * [keys of pairs are all different and not in DOMAIN(this)]
+     * </pre>
+     * @ensures this = #this union [pairs]
+     */
+    public final void putAll(Iterable<Pair<K, V>> pairs, int sizeHint) {
+        assert pairs != null : "Violation of: pairs is not null";
+        assert sizeHint >= 0 : "Violation of: sizeHint >= 0";
+
+        this.modCount++;
+        this.reserve(sizeHint);
+        for (Pair<K, V> pair : pairs) {
+            K key = pair.key();
+            assert key != null : "Violation of: key is not null";
+            assert pair.value() != null : "Violation of: value is not null";
+
+            Map<K, V> hashList = this.bucketAt(
+                    this.bucket(key, this.hashTable.length));
+            assert !hashList.hasKey(key) : ""
+                    + "Violation of: key is not in DOMAIN(this)";
+            hashList.add(key, pair.value());
+            this.size++;
+            this.growIfNeeded();
+        }
+    }
+
+    /**
+     * Adds every pair of {@code other} to {@code this}, combining the values
+     * of keys in both with {@code combiner}. {@code other} is walked bucket
+     * by bucket; if both maps have the same table size and spreading
+     * function, its keys are not hashed again at all.
+     *
+     * @param other
+     *            the map to merge in
+     * @param combiner
+     *            combines the value in {@code this} with the value in
+     *            {@code other}, in that order
+     * @updates this
+     * @requires other /= null  and  other /= this  and  combiner /= null
+     * @ensures <pre>
+     * this = {(k, v): (k is in DOMAIN(#this) \ DOMAIN(other)  and
+     *                  v = #this(k))  or
+     *                 (k is in DOMAIN(other) \ DOMAIN(#this)  and
+     *                  v = other(k))  or
+     *                 (k is in DOMAIN(#this) intersection DOMAIN(other)  and
+     *                  v = combiner applied to (#this(k), other(k)))}
+     * </pre>
+     */
+    public final void merge(Map4<K, V> other, BinaryOperator<V> combiner) {
+        assert other != null : "Violation of: other is not null";
+        assert other != this : "Violation of: other is not this";
+        assert combiner != null : "Violation of: combiner is not null";
 
-        for (int i = 0; i < this.hashTable.length; i++) {
-            if (this.hashTable[i].size() > 0) {
-                result += this.hashTable[i].size();
+        this.modCount++;
+        this.reserve(other.size);
+        Map<K, V>[] otherTable = other.hashTable;
+        // Pairs of a bucket of other all land in the same bucket of this
+        // exactly when both tables split keys the same way
+        boolean sameBuckets = otherTable.length == this.hashTable.length
+                && other.spreader == this.spreader;
+        for (int i = 0; i < otherTable.length; i++) {
+            Map<K, V> otherList = otherTable[i];
+            if (otherList != null && otherList.size() > 0) {
+                Map<K, V> sameList = null;
+                if (sameBuckets) {
+                    sameList = this.bucketAt(i);
+                }
+                for (Pair<K, V> pair : otherList) {
+                    K key = pair.key();
+                    Map<K, V> hashList = sameList;
+                    if (hashList == null) {
+                        hashList = this.bucketAt(
+                                this.bucket(key, this.hashTable.length));
+                    }
+                    if (hashList.hasKey(key)) {
+                        V combined = combiner.apply(hashList.value(key),
+                                pair.value());
+                        assert combined != null : ""
+                                + "Violation of: combiner result is not null";
+                        hashList.replaceValue(key, combined);
+                    } else {
+                        hashList.add(key, pair.value());
+                        this.size++;
+                    }
+                }
             }
         }
+    }
 
+    /**
+     * Adds {@code (key, value)} if {@code key} is absent, and otherwise
+     * replaces its value with {@code combiner.apply([its value], value)}.
+     * Hashes {@code key} once, where {@code hasKey}, {@code remove} and
+     * {@code add} would each hash it again.
+     *
+     * @param key
+     *            the key to update
+     * @param value
+     *            the value to add or combine with
+     * @param combiner
+     *            combines the current value with {@code value}
+     * @return the new value of {@code key}
+     * @updates this
+     * @requires key /= null and value /= null and combiner /= null
+     * @ensures <pre>
+     * if key is in DOMAIN(#this) then
+     *   merge = combiner applied to (#this(key), value)
+     * else
+     *   merge = value
+     * and  this = (#this \ {(key, ...)}) union {(key, merge)}
+     * </pre>
+     */
+    public final V merge(K key, V value, BinaryOperator<V> combiner) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+        assert combiner != null : "Violation of: combiner is not null";
+
+        Map<K, V> hashList = this
+                .bucketAt(this.bucket(key, this.hashTable.length));
+        V result = value;
+        this.modCount++;
+        if (hashList.hasKey(key)) {
+            result = combiner.apply(hashList.value(key), value);
+            assert result != null : ""
+                    + "Violation of: combiner result is not null";
+            hashList.replaceValue(key, result);
+        } else {
+            hashList.add(key, value);
+            this.size++;
+            this.growIfNeeded();
+        }
         return result;
     }
 
-    @Override
-    public final Iterator<Pair<K, V>> iterator() {
-        return new Map4Iterator();
+    /**
+     * Replaces the value of {@code key} with the result of
+     * {@code remapping.apply(key, [its current value or null])}. If the
+     * result is null, {@code key} is removed instead (or stays absent).
+     * Hashes {@code key} once.
+     *
+     * @param key
+     *            the key to update
+     * @param remapping
+     *            computes the new value from the key and its current value
+     * @return the new value of {@code key}, or null if it is now absent
+     * @updates this
+     * @requires key /= null and remapping /= null
+     * @ensures <pre>
+     * compute = [remapping applied to key and its value in #this, or null]
+     *   and
+     * if compute /= null then this = (#this \ {(key, ...)}) union
+     *   {(key, compute)}  else  this = #this \ {(key, ...)}
+     * </pre>
+     */
+    public final V compute(K key,
+            BiFunction<? super K, ? super V, ? extends V> remapping) {
+        assert key != null : "Violation of: key is not null";
+        assert remapping != null : "Violation of: remapping is not null";
+
+        Map<K, V> hashList = this
+                .bucketAt(this.bucket(key, this.hashTable.length));
+        boolean present = hashList.hasKey(key);
+        V old = null;
+        if (present) {
+            old = hashList.value(key);
+        }
+        V result = remapping.apply(key, old);
+        this.modCount++;
+        if (result != null && present) {
+            hashList.replaceValue(key, result);
+        } else if (result != null) {
+            hashList.add(key, result);
+            this.size++;
+            this.growIfNeeded();
+        } else if (present) {
+            hashList.remove(key);
+            this.size--;
+            this.shrinkIfNeeded();
+        }
+        return result;
+    }
+
+    /*
+     * Diagnostics ------------------------------------------------------------
+     */
+
+    /**
+     * Reports the number of buckets, so a snapshot of {@code this} can lay
+     * its entries out the same way.
+     *
+     * @return |$this.hashTable|
+     */
+    final int tableSize() {
+        return this.hashTable.length;
+    }
+
+    /**
+     * Reports the function hash codes go through before they are reduced to
+     * a bucket index.
+     *
+     * @return $this.spreader
+     */
+    final IntUnaryOperator spreader() {
+        return this.spreader;
+    }
+
+    /**
+     * Reports how evenly the keys are spread over the buckets. Walks the
+     * whole table, so it is meant for occasional monitoring, not hot paths.
+     *
+     * @return the bucket statistics of {@code this} as it is now
+     */
+    public final Diagnostics diagnostics() {
+        int[] lengths = new int[this.hashTable.length];
+        int maxChain = 0;
+        for (int i = 0; i < lengths.length; i++) {
+            if (this.hashTable[i] != null) {
+                lengths[i] = this.hashTable[i].size();
+                maxChain = Math.max(maxChain, lengths[i]);
+            }
+        }
+        int[] histogram = new int[maxChain + 1];
+        for (int length : lengths) {
+            histogram[length]++;
+        }
+        return new Diagnostics(histogram, this.size);
     }
 
     /**
-     * Implementation of {@code Iterator} interface for {@code Map4}.
+     * Bucket statistics of a {@code Map4}, as returned by
+     * {@code diagnostics()}.
+     */
+    public static final class Diagnostics {
+
+        /**
+         * Number of buckets holding exactly i entries, at index i.
+         */
+        private final int[] histogram;
+
+        /**
+         * Number of entries.
+         */
+        private final int size;
+
+        /**
+         * Constructor.
+         *
+         * @param histogram
+         *            number of buckets holding exactly i entries, at index i
+         * @param size
+         *            number of entries
+         */
+        Diagnostics(int[] histogram, int size) {
+            this.histogram = histogram;
+            this.size = size;
+        }
+
+        /**
+         * Returns the bucket-length histogram.
+         *
+         * @return array whose entry i is the number of buckets holding exactly
+         *         i entries; its last entry is for the longest chain
+         */
+        public int[] histogram() {
+            return this.histogram.clone();
+        }
+
+        /**
+         * Returns the number of buckets.
+         *
+         * @return the size of the hash table
+         */
+        public int bucketCount() {
+            int count = 0;
+            for (int buckets : this.histogram) {
+                count += buckets;
+            }
+            return count;
+        }
+
+        /**
+         * Returns the number of entries in the longest bucket.
+         *
+         * @return the longest chain
+         */
+        public int maxChain() {
+            return this.histogram.length - 1;
+        }
+
+        /**
+         * Returns the fraction of buckets that are empty.
+         *
+         * @return empty buckets divided by all buckets
+         */
+        public double emptyRatio() {
+            return (double) this.histogram[0] / this.bucketCount();
+        }
+
+        /**
+         * Returns the average number of entries per non-empty bucket; 1 is
+         * perfect spreading.
+         *
+         * @return entries divided by non-empty buckets, or 0 if there are no
+         *         entries
+         */
+        public double averageChain() {
+            int used = this.bucketCount() - this.histogram[0];
+            double result = 0;
+            if (used > 0) {
+                result = (double) this.size / used;
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "size=" + this.size + " buckets=" + this.bucketCount()
+                    + " maxChain=" + this.maxChain() + " emptyRatio="
+                    + this.emptyRatio() + " averageChain="
+                    + this.averageChain() + " histogram="
+                    + Arrays.toString(this.histogram);
+        }
+
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code Map4}. Empty
+     * buckets are skipped without asking them for an iterator.
      */
     private final class Map4Iterator implements Iterator<Pair<K, V>> {
 
@@ -301,17 +921,24 @@ public class Map4<K, V> extends MapSecondary<K, V> {
         private int currentBucket;
 
         /**
-         * Bucket iterator from which next element will come.
+         * Bucket iterator from which next element will come, or null before
+         * the first one.
          */
         private Iterator<Pair<K, V>> bucketIterator;
 
+        /**
+         * Value of {@code modCount} the iterator was created at.
+         */
+        private final int expectedModCount;
+
         /**
          * No-argument constructor.
          */
         Map4Iterator() {
             this.numberSeen = 0;
-            this.currentBucket = 0;
-            this.bucketIterator = Map4.this.hashTable[0].iterator();
+            this.currentBucket = -1;
+            this.bucketIterator = null;
+            this.expectedModCount = Map4.this.modCount;
         }
 
         @Override
@@ -321,6 +948,9 @@ public class Map4<K, V> extends MapSecondary<K, V> {
 
         @Override
         public Pair<K, V> next() {
+            if (Map4.this.modCount != this.expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
             assert this.hasNext() : "Violation of: ~this.unseen /= <>";
             if (!this.hasNext()) {
                 /*
@@ -331,10 +961,13 @@ public class Map4<K, V> extends MapSecondary<K, V> {
                 throw new NoSuchElementException();
             }
             this.numberSeen++;
-            while (!this.bucketIterator.hasNext()) {
-                this.currentBucket++;
-                this.bucketIterator = Map4.this.hashTable[this.currentBucket]
-                        .iterator();
+            if (this.bucketIterator == null || !this.bucketIterator.hasNext()) {
+                Map<K, V>[] table = Map4.this.hashTable;
+                do {
+                    this.currentBucket++;
+                } while (table[this.currentBucket] == null
+                        || table[this.currentBucket].size() == 0);
+                this.bucketIterator = table[this.currentBucket].iterator();
             }
             return this.bucketIterator.next();
         }
@@ -347,4 +980,141 @@ public class Map4<K, V> extends MapSecondary<K, V> {
 
     }
 
+    /**
+     * Implementation of {@code Spliterator} interface for {@code Map4}, over
+     * a range of buckets.
+     */
+    private final class Map4Spliterator implements Spliterator<Pair<K, V>> {
+
+        /**
+         * Next bucket not yet started.
+         */
+        private int index;
+
+        /**
+         * One past the last bucket.
+         */
+        private final int fence;
+
+        /**
+         * Iterator over the bucket being walked, or null between buckets.
+         */
+        private Iterator<Pair<K, V>> bucketIterator;
+
+        /**
+         * Value of {@code modCount} the spliterator was created at.
+         */
+        private final int expectedModCount;
+
+        /**
+         * Constructor.
+         *
+         * @param origin
+         *            first bucket
+         * @param fence
+         *            one past the last bucket
+         */
+        Map4Spliterator(int origin, int fence) {
+            this(origin, fence, Map4.this.modCount);
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param origin
+         *            first bucket
+         * @param fence
+         *            one past the last bucket
+         * @param expectedModCount
+         *            value of {@code modCount} the map must keep
+         */
+        private Map4Spliterator(int origin, int fence, int expectedModCount) {
+            this.index = origin;
+            this.fence = fence;
+            this.bucketIterator = null;
+            this.expectedModCount = expectedModCount;
+        }
+
+        /**
+         * Throws if the map has changed since this was created.
+         */
+        private void checkForModification() {
+            if (Map4.this.modCount != this.expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Pair<K, V>> action) {
+            assert action != null : "Violation of: action is not null";
+            this.checkForModification();
+
+            Map<K, V>[] table = Map4.this.hashTable;
+            while ((this.bucketIterator == null
+                    || !this.bucketIterator.hasNext())
+                    && this.index < this.fence) {
+                Map<K, V> bucket = table[this.index];
+                this.index++;
+                this.bucketIterator = null;
+                if (bucket != null && bucket.size() > 0) {
+                    this.bucketIterator = bucket.iterator();
+                }
+            }
+            boolean result = this.bucketIterator != null
+                    && this.bucketIterator.hasNext();
+            if (result) {
+                action.accept(this.bucketIterator.next());
+            }
+            return result;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Pair<K, V>> action) {
+            assert action != null : "Violation of: action is not null";
+
+            if (this.bucketIterator != null) {
+                while (this.bucketIterator.hasNext()) {
+                    action.accept(this.bucketIterator.next());
+                }
+                this.bucketIterator = null;
+            }
+            Map<K, V>[] table = Map4.this.hashTable;
+            for (; this.index < this.fence; this.index++) {
+                Map<K, V> bucket = table[this.index];
+                if (bucket != null) {
+                    for (Pair<K, V> pair : bucket) {
+                        action.accept(pair);
+                    }
+                }
+            }
+            this.checkForModification();
+        }
+
+        @Override
+        public Spliterator<Pair<K, V>> trySplit() {
+            // Only whole buckets that have not been started can be handed off
+            int mid = (this.index + this.fence) >>> 1;
+            Spliterator<Pair<K, V>> result = null;
+            if (this.index < mid) {
+                result = new Map4Spliterator(this.index, mid,
+                        this.expectedModCount);
+                this.index = mid;
+            }
+            return result;
+        }
+
+        @Override
+        public long estimateSize() {
+            // Assume the pairs are spread evenly over the buckets
+            return (long) Map4.this.size * (this.fence - this.index)
+                    / Map4.this.hashTable.length;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.DISTINCT | Spliterator.NONNULL;
+        }
+
+    }
+
 }
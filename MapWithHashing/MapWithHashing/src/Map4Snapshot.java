@@ -0,0 +1,566 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntUnaryOperator;
+
+import components.map.Map;
+import components.map.Map.Pair;
+
+/**
+ * Read-only view of a {@code Map} saved to a binary snapshot file, answering
+ * {@code hasKey} and {@code value} straight from a memory mapping of the
+ * file. Opening a snapshot reads only its header and bucket offsets, so
+ * lookups can start right away; {@code load} builds a full {@code Map4} when
+ * one is needed.
+ *
+ * <p>
+ * File format, big-endian: the int {@code MAGIC}, the int {@code VERSION},
+ * the int table size t, the int number of entries, the int
+ * {@code DEFAULT_SPREADING} or {@code CUSTOM_SPREADING}, t + 1 int offsets of
+ * the buckets relative to the start of the entries (the last one is where
+ * the entries end), then the entries grouped by bucket. Every entry is the
+ * int hash code of its key, the int length and bytes of the encoded key, and
+ * the int length and bytes of the encoded value. An entry is in bucket
+ * {@code [the spreading of its hash code, as an unsigned integer] mod t}. The
+ * whole file must fit in one mapping, i.e. be under 2 GiB.
+ *
+ * <p>
+ * A snapshot of a {@code Map4} has the same table size and spreading
+ * function as that map, so its entries hash the same way; a snapshot of a
+ * map with a custom spreading function can only be opened with that
+ * function, since functions are not saved.
+ *
+ * <p>
+ * Keys must have hash codes that are the same in every run of the program,
+ * as {@code String} and {@code Integer} keys do.
+ *
+ * @param <K>
+ *            type of {@code Map} domain (key) entries
+ * @param <V>
+ *            type of {@code Map} range (associated value) entries
+ *
+ * @author Charan nanduri and Evan Frisbie
+ *
+ */
+public final class Map4Snapshot<K, V> {
+
+    /**
+     * Converts keys or values to and from bytes.
+     *
+     * @param <T>
+     *            type of the things converted
+     */
+    public interface Codec<T> {
+
+        /**
+         * Encodes {@code value}.
+         *
+         * @param value
+         *            the thing to encode
+         * @return the bytes of {@code value}
+         */
+        byte[] encode(T value);
+
+        /**
+         * Decodes the bytes between the position and the limit of
+         * {@code bytes}.
+         *
+         * @param bytes
+         *            the encoded thing; may be changed
+         * @return the thing encoded in {@code bytes}
+         */
+        T decode(ByteBuffer bytes);
+
+    }
+
+    /**
+     * Codec for {@code String}s, as UTF-8.
+     */
+    public static final Codec<String> STRING = new Codec<String>() {
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(ByteBuffer bytes) {
+            return StandardCharsets.UTF_8.decode(bytes).toString();
+        }
+    };
+
+    /**
+     * Codec for {@code Integer}s, as four bytes.
+     */
+    public static final Codec<Integer> INTEGER = new Codec<Integer>() {
+        @Override
+        public byte[] encode(Integer value) {
+            return ByteBuffer.allocate(Integer.BYTES).putInt(value).array();
+        }
+
+        @Override
+        public Integer decode(ByteBuffer bytes) {
+            return bytes.getInt();
+        }
+    };
+
+    /**
+     * First four bytes of every snapshot file.
+     */
+    private static final int MAGIC = 0x4D415034;
+
+    /**
+     * Version of the file format.
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * Header value for entries spread with {@code Map4}'s default function.
+     */
+    private static final int DEFAULT_SPREADING = 0;
+
+    /**
+     * Header value for entries spread with another function.
+     */
+    private static final int CUSTOM_SPREADING = 1;
+
+    /**
+     * Number of bytes before the bucket offsets.
+     */
+    private static final int HEADER_SIZE = 5 * Integer.BYTES;
+
+    /**
+     * Largest ratio of entries to buckets in a snapshot of a map other than a
+     * {@code Map4}.
+     */
+    private static final double LOAD_FACTOR = 0.75;
+
+    /**
+     * The mapped file.
+     */
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Number of buckets.
+     */
+    private final int tableSize;
+
+    /**
+     * Number of entries.
+     */
+    private final int size;
+
+    /**
+     * Function hash codes go through before they are reduced to a bucket.
+     */
+    private final IntUnaryOperator spreader;
+
+    /**
+     * Position of the first entry in {@code buffer}.
+     */
+    private final int entriesStart;
+
+    /**
+     * Codec for the keys.
+     */
+    private final Codec<K> keyCodec;
+
+    /**
+     * Codec for the values.
+     */
+    private final Codec<V> valueCodec;
+
+    /**
+     * Constructor.
+     *
+     * @param buffer
+     *            the mapped file
+     * @param keyCodec
+     *            codec for the keys
+     * @param valueCodec
+     *            codec for the values
+     * @param tableSize
+     *            number of buckets
+     * @param size
+     *            number of entries
+     * @param spreader
+     *            function the hash codes were spread with
+     */
+    private Map4Snapshot(MappedByteBuffer buffer, Codec<K> keyCodec,
+            Codec<V> valueCodec, int tableSize, int size,
+            IntUnaryOperator spreader) {
+        this.buffer = buffer;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.tableSize = tableSize;
+        this.size = size;
+        this.spreader = spreader;
+        this.entriesStart = HEADER_SIZE + (tableSize + 1) * Integer.BYTES;
+    }
+
+    /**
+     * Returns the bucket of a hash code in a table of {@code tableSize}
+     * buckets.
+     *
+     * @param hash
+     *            the hash code
+     * @param tableSize
+     *            the number of buckets
+     * @param spreader
+     *            the function hash codes are spread with
+     * @return the index of the bucket
+     */
+    private static int bucket(int hash, int tableSize,
+            IntUnaryOperator spreader) {
+        return Integer.remainderUnsigned(spreader.applyAsInt(hash),
+                tableSize);
+    }
+
+    /**
+     * Writes {@code map} to {@code file}. It is written next to it first and
+     * then moved over it, so an interrupted save leaves the previous snapshot
+     * intact. If {@code map} is a {@code Map4}, the snapshot has its table
+     * size and spreading function.
+     *
+     * @param <K>
+     *            type of the keys
+     * @param <V>
+     *            type of the values
+     * @param map
+     *            the map to save
+     * @param file
+     *            the snapshot file
+     * @param keyCodec
+     *            codec for the keys
+     * @param valueCodec
+     *            codec for the values
+     * @throws IOException
+     *             if the file cannot be written, or would be 2 GiB or larger
+     */
+    public static <K, V> void save(Map<K, V> map, Path file,
+            Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        assert map != null : "Violation of: map is not null";
+        assert file != null : "Violation of: file is not null";
+        assert keyCodec != null : "Violation of: keyCodec is not null";
+        assert valueCodec != null : "Violation of: valueCodec is not null";
+
+        int size = map.size();
+        int tableSize = (int) Math.ceil(size / LOAD_FACTOR) + 1;
+        IntUnaryOperator spreader = Map4.DEFAULT_SPREADER;
+        if (map instanceof Map4<?, ?>) {
+            Map4<K, V> source = (Map4<K, V>) map;
+            tableSize = source.tableSize();
+            spreader = source.spreader();
+        }
+        int spreading = CUSTOM_SPREADING;
+        if (spreader == Map4.DEFAULT_SPREADER) {
+            spreading = DEFAULT_SPREADING;
+        }
+
+        // Encode every entry once, then lay them out bucket by bucket with a
+        // counting sort
+        int[] hashes = new int[size];
+        byte[][] keys = new byte[size][];
+        byte[][] values = new byte[size][];
+        int[] offsets = new int[tableSize + 1];
+        long length = 0;
+        int n = 0;
+        for (Pair<K, V> pair : map) {
+            hashes[n] = pair.key().hashCode();
+            keys[n] = keyCodec.encode(pair.key());
+            values[n] = valueCodec.encode(pair.value());
+            int entryLength = 3 * Integer.BYTES + keys[n].length
+                    + values[n].length;
+            offsets[bucket(hashes[n], tableSize, spreader) + 1] += entryLength;
+            length += entryLength;
+            n++;
+        }
+        if (HEADER_SIZE + (tableSize + 1L) * Integer.BYTES
+                + length > Integer.MAX_VALUE) {
+            throw new IOException("map is too large for a snapshot");
+        }
+        for (int b = 0; b < tableSize; b++) {
+            offsets[b + 1] += offsets[b];
+        }
+        int[] order = new int[size];
+        int[] firstOfBucket = new int[tableSize + 1];
+        for (int i = 0; i < size; i++) {
+            firstOfBucket[bucket(hashes[i], tableSize, spreader) + 1]++;
+        }
+        for (int b = 0; b < tableSize; b++) {
+            firstOfBucket[b + 1] += firstOfBucket[b];
+        }
+        for (int i = 0; i < size; i++) {
+            order[firstOfBucket[bucket(hashes[i], tableSize, spreader)]++] = i;
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(tableSize);
+            out.writeInt(size);
+            out.writeInt(spreading);
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+            for (int i : order) {
+                out.writeInt(hashes[i]);
+                out.writeInt(keys[i].length);
+                out.write(keys[i]);
+                out.writeInt(values[i].length);
+                out.write(values[i]);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Memory-maps the snapshot in {@code file}, reading only its header and
+     * bucket offsets. The snapshot must have been saved from a map with the
+     * default spreading function.
+     *
+     * @param <K>
+     *            type of the keys
+     * @param <V>
+     *            type of the values
+     * @param file
+     *            the snapshot file
+     * @param keyCodec
+     *            codec for the keys, the one it was saved with
+     * @param valueCodec
+     *            codec for the values, the one it was saved with
+     * @return the snapshot
+     * @throws IOException
+     *             if the file cannot be mapped, is not a snapshot, or was
+     *             saved with a custom spreading function
+     */
+    public static <K, V> Map4Snapshot<K, V> open(Path file, Codec<K> keyCodec,
+            Codec<V> valueCodec) throws IOException {
+        return open(file, keyCodec, valueCodec, null);
+    }
+
+    /**
+     * Memory-maps the snapshot in {@code file}, reading only its header and
+     * bucket offsets. The offsets are checked to start at 0, never decrease
+     * and end where the file does, so lookups and {@code load} never follow
+     * one out of the mapping.
+     *
+     * @param <K>
+     *            type of the keys
+     * @param <V>
+     *            type of the values
+     * @param file
+     *            the snapshot file
+     * @param keyCodec
+     *            codec for the keys, the one it was saved with
+     * @param valueCodec
+     *            codec for the values, the one it was saved with
+     * @param spreader
+     *            the spreading function of the map it was saved from, or
+     *            null for the default one
+     * @return the snapshot
+     * @throws IOException
+     *             if the file cannot be mapped or is not a snapshot, or if
+     *             {@code spreader} is null and it was saved with a custom
+     *             spreading function
+     */
+    public static <K, V> Map4Snapshot<K, V> open(Path file, Codec<K> keyCodec,
+            Codec<V> valueCodec, IntUnaryOperator spreader)
+            throws IOException {
+        assert file != null : "Violation of: file is not null";
+        assert keyCodec != null : "Violation of: keyCodec is not null";
+        assert valueCodec != null : "Violation of: valueCodec is not null";
+
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE || fileSize > Integer.MAX_VALUE) {
+                throw new IOException(file + " is not a map snapshot");
+            }
+            MappedByteBuffer buffer = channel
+                    .map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            if (buffer.getInt(0) != MAGIC
+                    || buffer.getInt(Integer.BYTES) != VERSION) {
+                throw new IOException(file + " is not a map snapshot");
+            }
+            int tableSize = buffer.getInt(2 * Integer.BYTES);
+            int size = buffer.getInt(3 * Integer.BYTES);
+            int spreading = buffer.getInt(4 * Integer.BYTES);
+            if (tableSize <= 0 || size < 0 || HEADER_SIZE
+                    + (tableSize + 1L) * Integer.BYTES > fileSize
+                    || (spreading != DEFAULT_SPREADING
+                            && spreading != CUSTOM_SPREADING)) {
+                throw new IOException(file + " is not a map snapshot");
+            }
+            long entriesLength = fileSize - HEADER_SIZE
+                    - (tableSize + 1L) * Integer.BYTES;
+            int previous = 0;
+            for (int b = 0; b <= tableSize; b++) {
+                int offset = buffer.getInt(HEADER_SIZE + b * Integer.BYTES);
+                if (offset < previous || (b == 0 && offset != 0)) {
+                    throw new IOException(file + " is not a map snapshot");
+                }
+                previous = offset;
+            }
+            if (previous != entriesLength) {
+                throw new IOException(file + " is not a map snapshot");
+            }
+            IntUnaryOperator spread = spreader;
+            if (spread == null) {
+                if (spreading == CUSTOM_SPREADING) {
+                    throw new IOException(file + " was saved with a custom"
+                            + " spreading function");
+                }
+                spread = Map4.DEFAULT_SPREADER;
+            }
+
+            return new Map4Snapshot<K, V>(buffer, keyCodec, valueCodec,
+                    tableSize, size, spread);
+        }
+    }
+
+    /**
+     * Returns the position in the mapping of the value length of the entry
+     * for {@code key}, or -1 if there is none.
+     *
+     * @param key
+     *            the key to look for
+     * @return the position of the value of {@code key}, or -1
+     */
+    private int find(K key) {
+        int hash = key.hashCode();
+        byte[] bytes = this.keyCodec.encode(key);
+        int b = bucket(hash, this.tableSize, this.spreader);
+        int position = this.entriesStart
+                + this.buffer.getInt(HEADER_SIZE + b * Integer.BYTES);
+        int end = this.entriesStart
+                + this.buffer.getInt(HEADER_SIZE + (b + 1) * Integer.BYTES);
+
+        int result = -1;
+        while (result < 0 && position < end) {
+            int keyLength = this.buffer.getInt(position + Integer.BYTES);
+            int keyStart = position + 2 * Integer.BYTES;
+            int valueAt = keyStart + keyLength;
+            if (this.buffer.getInt(position) == hash
+                    && keyLength == bytes.length) {
+                // Compare the key bytes in place
+                int i = 0;
+                while (i < keyLength
+                        && this.buffer.get(keyStart + i) == bytes[i]) {
+                    i++;
+                }
+                if (i == keyLength) {
+                    result = valueAt;
+                }
+            }
+            position = valueAt + Integer.BYTES + this.buffer.getInt(valueAt);
+        }
+        return result;
+    }
+
+    /**
+     * Decodes {@code length} bytes of the mapping starting at
+     * {@code position}.
+     *
+     * @param <T>
+     *            type of the thing decoded
+     * @param codec
+     *            the codec to decode with
+     * @param position
+     *            position of the first byte
+     * @param length
+     *            number of bytes
+     * @return the decoded thing
+     */
+    private <T> T decode(Codec<T> codec, int position, int length) {
+        ByteBuffer bytes = this.buffer.duplicate();
+        bytes.position(position);
+        bytes.limit(position + length);
+        return codec.decode(bytes.slice());
+    }
+
+    /**
+     * Reports whether there is a pair in this snapshot whose first component
+     * is {@code key}.
+     *
+     * @param key
+     *            the key to be checked
+     * @return true iff there is a pair in this snapshot whose first component
+     *         is {@code key}
+     * @requires key /= null
+     */
+    public boolean hasKey(K key) {
+        assert key != null : "Violation of: key is not null";
+
+        return this.find(key) >= 0;
+    }
+
+    /**
+     * Reports the value associated with {@code key} in this snapshot,
+     * decoding only that value.
+     *
+     * @param key
+     *            the key whose associated value is to be reported
+     * @return the value associated with {@code key}
+     * @requires key /= null and key is in DOMAIN(this)
+     */
+    public V value(K key) {
+        assert key != null : "Violation of: key is not null";
+
+        int position = this.find(key);
+        assert position >= 0 : "Violation of: key is in DOMAIN(this)";
+
+        return this.decode(this.valueCodec, position + Integer.BYTES,
+                this.buffer.getInt(position));
+    }
+
+    /**
+     * Reports the number of pairs in this snapshot.
+     *
+     * @return the number of pairs
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Decodes every entry into a new {@code Map4} with the table size and
+     * spreading function of this snapshot, grown up front if it has to grow
+     * at all.
+     *
+     * @return a map with the pairs of this snapshot
+     */
+    public Map4<K, V> load() {
+        Map4<K, V> result = new Map4<K, V>(this.tableSize,
+                Map4.DEFAULT_LOAD_FACTOR, false, this.spreader);
+        result.reserve(this.size);
+        final int end = this.entriesStart + this.buffer.getInt(
+                HEADER_SIZE + this.tableSize * Integer.BYTES);
+
+        int position = this.entriesStart;
+        while (position < end) {
+            int keyLength = this.buffer.getInt(position + Integer.BYTES);
+            int keyStart = position + 2 * Integer.BYTES;
+            int valueAt = keyStart + keyLength;
+            int valueLength = this.buffer.getInt(valueAt);
+            K key = this.decode(this.keyCodec, keyStart, keyLength);
+            V value = this.decode(this.valueCodec, valueAt + Integer.BYTES,
+                    valueLength);
+            result.add(key, value);
+            position = valueAt + Integer.BYTES + valueLength;
+        }
+
+        return result;
+    }
+
+}
@@ -0,0 +1,443 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import components.map.Map;
+import components.map.MapSecondary;
+
+/**
+ * {@code Map} represented as an open-addressing hash table with linear
+ * probing, in flat parallel arrays of keys, values and cached hash codes,
+ * with implementations of primary methods. There are no bucket objects and
+ * no per-entry nodes; removal shifts the following entries of the probe run
+ * back instead of leaving tombstones.
+ *
+ * @param <K>
+ *            type of {@code Map} domain (key) entries
+ * @param <V>
+ *            type of {@code Map} range (associated value) entries
+ * @convention <pre>
+ * |$this.keys| = |$this.values| = |$this.hashes|  and
+ * |$this.keys| is a power of 2  and
+ * $this.size = [number of non-null entries in $this.keys]  and
+ * $this.size < |$this.keys|  and
+ * 0 <= $this.cursor < |$this.keys|  and
+ * for all i: integer
+ *     where (0 <= i  and  i < |$this.keys|)
+ *   (($this.keys[i] = null) = ($this.values[i] = null))  and
+ * for all i: integer
+ *     where (0 <= i  and  i < |$this.keys|  and  $this.keys[i] /= null)
+ *   ($this.hashes[i] = [spread hash code of $this.keys[i]]  and
+ *    [no null entry of $this.keys lies on the probe sequence from
+ *     $this.hashes[i] mod |$this.keys| to i])  and
+ * [the non-null entries of $this.keys are all different]
+ * </pre>
+ * @correspondence <pre>
+ * this = {(k, v): (k = $this.keys[i]  and  v = $this.values[i])
+ *         for some i where $this.keys[i] /= null}
+ * </pre>
+ *
+ * @author Charan nanduri and Evan Frisbie
+ *
+ */
+public class Map4a<K, V> extends MapSecondary<K, V> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Default number of entries the table is sized for.
+     */
+    private static final int DEFAULT_EXPECTED_SIZE = 64;
+
+    /**
+     * Largest percentage of slots in use before the table doubles.
+     */
+    private static final int MAX_LOAD_PERCENT = 75;
+
+    /**
+     * Largest number of slots.
+     */
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * Keys, or null for an empty slot.
+     */
+    private K[] keys;
+
+    /**
+     * Value of the key in the same slot.
+     */
+    private V[] values;
+
+    /**
+     * Spread hash code of the key in the same slot.
+     */
+    private int[] hashes;
+
+    /**
+     * Number of entries.
+     */
+    private int size;
+
+    /**
+     * Slot {@code removeAny} starts looking at.
+     */
+    private int cursor;
+
+    /**
+     * Number of entries the table was sized for by the constructor.
+     */
+    private int expectedSize;
+
+    /**
+     * Spreads the high bits of a hash code into the low bits used to pick a
+     * slot.
+     *
+     * @param key
+     *            the key to hash
+     * @return the spread hash code of {@code key}
+     */
+    private static int spread(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the number of slots for a table holding {@code expected}
+     * entries.
+     *
+     * @param expected
+     *            the number of entries
+     * @return a power of 2 large enough to keep the load below
+     *         {@code MAX_LOAD_PERCENT}
+     */
+    private static int capacityFor(int expected) {
+        int capacity = 2;
+        while (capacity < MAX_CAPACITY
+                && (long) capacity * MAX_LOAD_PERCENT / 100 <= expected) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    /**
+     * Creator of initial representation.
+     *
+     * @param capacity
+     *            the number of slots
+     * @requires capacity is a power of 2
+     * @ensures <pre>
+     * |$this.keys| = capacity  and
+     * [all entries of $this.keys and $this.values are null]  and
+     * $this.size = 0  and  $this.cursor = 0
+     * </pre>
+     */
+    @SuppressWarnings("unchecked")
+    private void createNewRep(int capacity) {
+        /*
+         * With "new K[...]" in place of "new Object[...]" it does not compile;
+         * as shown, it results in a warning about an unchecked cast, though it
+         * cannot fail.
+         */
+        this.keys = (K[]) new Object[capacity];
+        this.values = (V[]) new Object[capacity];
+        this.hashes = new int[capacity];
+        this.size = 0;
+        this.cursor = 0;
+    }
+
+    /**
+     * Returns the slot holding {@code key}, or the empty slot ending its probe
+     * sequence if it is not in the table. The convention keeps at least one
+     * slot empty, so the probe always stops.
+     *
+     * @param key
+     *            the key to look for
+     * @param hash
+     *            the spread hash code of {@code key}
+     * @return the index of the slot
+     */
+    private int find(K key, int hash) {
+        int mask = this.keys.length - 1;
+        int i = hash & mask;
+        while (this.keys[i] != null
+                && !(this.hashes[i] == hash && this.keys[i].equals(key))) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Doubles the number of slots and reinserts every entry, using the cached
+     * hash codes.
+     */
+    private void grow() {
+        K[] oldKeys = this.keys;
+        V[] oldValues = this.values;
+        int[] oldHashes = this.hashes;
+        int oldSize = this.size;
+
+        this.createNewRep(2 * oldKeys.length);
+        int mask = this.keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != null) {
+                int i = oldHashes[j] & mask;
+                while (this.keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                this.keys[i] = oldKeys[j];
+                this.values[i] = oldValues[j];
+                this.hashes[i] = oldHashes[j];
+            }
+        }
+        this.size = oldSize;
+    }
+
+    /**
+     * Empties slot {@code i} and shifts the rest of its probe run back, so no
+     * entry is left behind an empty slot on its probe sequence.
+     *
+     * @param i
+     *            the slot to empty
+     * @return the pair that was in slot {@code i}
+     * @requires $this.keys[i] /= null
+     */
+    private Pair<K, V> removeSlot(int i) {
+        Pair<K, V> result = new SimplePair<K, V>(this.keys[i], this.values[i]);
+        int mask = this.keys.length - 1;
+
+        int hole = i;
+        int j = (hole + 1) & mask;
+        while (this.keys[j] != null) {
+            // Move the entry at j into the hole unless the hole comes before
+            // its home slot along the probe sequence
+            int home = this.hashes[j] & mask;
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                this.keys[hole] = this.keys[j];
+                this.values[hole] = this.values[j];
+                this.hashes[hole] = this.hashes[j];
+                hole = j;
+            }
+            j = (j + 1) & mask;
+        }
+        this.keys[hole] = null;
+        this.values[hole] = null;
+        this.size--;
+
+        return result;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public Map4a() {
+
+        this(DEFAULT_EXPECTED_SIZE);
+
+    }
+
+    /**
+     * Constructor resulting in a table sized for {@code expectedSize} entries
+     * before it has to grow.
+     *
+     * @param expectedSize
+     *            number of entries expected
+     * @requires expectedSize >= 0
+     * @ensures this = {}
+     */
+    public Map4a(int expectedSize) {
+        assert expectedSize >= 0 : "Expected size must not be negative.";
+
+        this.expectedSize = expectedSize;
+        this.createNewRep(capacityFor(expectedSize));
+
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final Map<K, V> newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep(capacityFor(this.expectedSize));
+    }
+
+    @Override
+    public final void transferFrom(Map<K, V> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof Map4a<?, ?> : ""
+                + "Violation of: source is of dynamic type Map4a<?,?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type Map4a<?,?>,
+         * and the ?,? must be K,V or the call would not have compiled.
+         */
+        Map4a<K, V> localSource = (Map4a<K, V>) source;
+        this.keys = localSource.keys;
+        this.values = localSource.values;
+        this.hashes = localSource.hashes;
+        this.size = localSource.size;
+        this.cursor = localSource.cursor;
+        this.expectedSize = localSource.expectedSize;
+        localSource.createNewRep(capacityFor(localSource.expectedSize));
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(K key, V value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+
+        /*
+         * Once the table is at MAX_CAPACITY it cannot grow, so refuse to fill
+         * its last empty slot; find relies on reaching one to stop probing
+         */
+        if (this.keys.length == MAX_CAPACITY
+                && this.size == this.keys.length - 1) {
+            throw new IllegalStateException(
+                    "Map4a cannot hold more than " + this.size + " entries");
+        }
+
+        int hash = spread(key);
+        int i = this.find(key, hash);
+        assert this.keys[i] == null : ""
+                + "Violation of: key is not in DOMAIN(this)";
+
+        this.keys[i] = key;
+        this.values[i] = value;
+        this.hashes[i] = hash;
+        this.size++;
+        if ((long) this.size * 100 > (long) this.keys.length * MAX_LOAD_PERCENT
+                && this.keys.length < MAX_CAPACITY) {
+            this.grow();
+        }
+    }
+
+    @Override
+    public final Pair<K, V> remove(K key) {
+        assert key != null : "Violation of: key is not null";
+
+        int i = this.find(key, spread(key));
+        assert this.keys[i] != null : "Violation of: key is in DOMAIN(this)";
+
+        return this.removeSlot(i);
+    }
+
+    @Override
+    public final Pair<K, V> removeAny() {
+        assert this.size > 0 : "Violation of: this /= empty_set";
+
+        // Keep looking from where the last removal was, so draining the map
+        // sweeps the table once instead of rescanning it from slot 0
+        int mask = this.keys.length - 1;
+        while (this.keys[this.cursor] == null) {
+            this.cursor = (this.cursor + 1) & mask;
+        }
+        return this.removeSlot(this.cursor);
+    }
+
+    @Override
+    public final V value(K key) {
+        assert key != null : "Violation of: key is not null";
+
+        int i = this.find(key, spread(key));
+        assert this.keys[i] != null : "Violation of: key is in DOMAIN(this)";
+
+        return this.values[i];
+    }
+
+    @Override
+    public final boolean hasKey(K key) {
+        assert key != null : "Violation of: key is not null";
+
+        return this.keys[this.find(key, spread(key))] != null;
+    }
+
+    @Override
+    public final int size() {
+        return this.size;
+    }
+
+    @Override
+    public final Iterator<Pair<K, V>> iterator() {
+        return new Map4aIterator();
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code Map4a}.
+     */
+    private final class Map4aIterator implements Iterator<Pair<K, V>> {
+
+        /**
+         * Number of elements seen already (i.e., |~this.seen|).
+         */
+        private int numberSeen;
+
+        /**
+         * Slot the next element is looked for at.
+         */
+        private int slot;
+
+        /**
+         * No-argument constructor.
+         */
+        Map4aIterator() {
+            this.numberSeen = 0;
+            this.slot = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.numberSeen < Map4a.this.size;
+        }
+
+        @Override
+        public Pair<K, V> next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            this.numberSeen++;
+            while (Map4a.this.keys[this.slot] == null) {
+                this.slot++;
+            }
+            Pair<K, V> result = new SimplePair<K, V>(Map4a.this.keys[this.slot],
+                    Map4a.this.values[this.slot]);
+            this.slot++;
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
@@ -0,0 +1,489 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+
+import components.map.Map;
+import components.map.MapSecondary;
+
+/**
+ * {@code Map} represented as a fixed array of {@code Map4} segments, each
+ * guarded by its own lock, so threads working on keys in different segments
+ * never wait for each other. A key's segment is picked from the high bits of
+ * its hash code, and the segment hashes the key again to pick a bucket; each
+ * segment grows on its own.
+ *
+ * <p>
+ * The kernel methods for single keys ({@code add}, {@code remove},
+ * {@code value}, {@code hasKey}) and {@code removeAny} are atomic; the size
+ * is kept in a {@code LongAdder}, so updates never share a lock. Kernel
+ * preconditions still apply, so a thread that checks {@code hasKey} and then
+ * calls {@code add} must not race another thread adding the same key; use
+ * {@code compute}, {@code merge} or {@code increment} for read-modify-write
+ * updates instead. {@code size} is exact whenever no update is in progress.
+ * The iterator walks a copy of each segment taken under its lock, so it never
+ * fails, but it need not reflect updates made while it is in use.
+ * {@code clear}, {@code newInstance} and {@code transferFrom} are not
+ * synchronized with anything and must not be called while other threads use
+ * either map.
+ *
+ * @param <K>
+ *            type of {@code Map} domain (key) entries
+ * @param <V>
+ *            type of {@code Map} range (associated value) entries
+ * @convention <pre>
+ * |$this.segments| > 0  and
+ * |$this.segments| is a power of 2  and
+ * 2^$this.shift * |$this.segments| = 2^32  and
+ * for all i: integer, pf: PARTIAL_FUNCTION, x: K
+ *     where (0 <= i  and  i < |$this.segments|  and
+ *            <pf> = $this.segments[i, i+1)  and
+ *            x is in DOMAIN(pf))
+ *   ([segment index computed from x.hashCode()] = i)  and
+ * [sum of the cells of $this.size] = sum i: integer, pf: PARTIAL_FUNCTION
+ *     where (0 <= i  and  i < |$this.segments|  and
+ *            <pf> = $this.segments[i, i+1))
+ *   (|pf|)  and
+ * 0 <= $this.cursor  and  $this.cursor < |$this.segments|
+ * </pre>
+ * @correspondence <pre>
+ * this = union i: integer, pf: PARTIAL_FUNCTION
+ *            where (0 <= i  and  i < |$this.segments|  and
+ *                   <pf> = $this.segments[i, i+1))
+ *          (pf)
+ * </pre>
+ *
+ * @author Charan nanduri and Evan Frisbie
+ *
+ */
+public class Map4c<K, V> extends MapSecondary<K, V> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Default number of segments (and locks).
+     */
+    private static final int DEFAULT_SEGMENT_COUNT = 64;
+
+    /**
+     * Largest number of segments.
+     */
+    private static final int MAX_SEGMENT_COUNT = 1 << 16;
+
+    /**
+     * Initial hash table size of every segment.
+     */
+    private static final int SEGMENT_HASH_TABLE_SIZE = 11;
+
+    /**
+     * Multiplier spreading hash codes over the high bits (2^32 divided by the
+     * golden ratio).
+     */
+    private static final int SPREAD_MULTIPLIER = 0x9E3779B9;
+
+    /**
+     * Segments; each one is also the lock guarding it.
+     */
+    private Map4<K, V>[] segments;
+
+    /**
+     * Number of bits a spread hash code is shifted right to get a segment
+     * index.
+     */
+    private int shift;
+
+    /**
+     * Total size of abstract {@code this}, counted in cells that threads
+     * update without contending.
+     */
+    private LongAdder size;
+
+    /**
+     * Segment {@code removeAny} starts looking at; only a hint, so races on
+     * it are harmless.
+     */
+    private volatile int cursor;
+
+    /**
+     * Number of segments, as requested by the constructor.
+     */
+    private int segmentCount;
+
+    /**
+     * Returns the number of segments for a requested number, rounded up to a
+     * power of 2.
+     *
+     * @param requested
+     *            the requested number of segments
+     * @return the number of segments
+     * @requires requested > 0
+     */
+    private static int segmentCountFor(int requested) {
+        int count = 1;
+        while (count < requested && count < MAX_SEGMENT_COUNT) {
+            count *= 2;
+        }
+        return count;
+    }
+
+    /**
+     * Creator of initial representation.
+     *
+     * @param count
+     *            the number of segments
+     * @requires count is a power of 2
+     * @ensures <pre>
+     * |$this.segments| = count  and
+     * for all i: integer
+     *     where (0 <= i  and  i < |$this.segments|)
+     *   ($this.segments[i, i+1) = <{}>)  and
+     * [sum of the cells of $this.size] = 0  and  $this.cursor = 0
+     * </pre>
+     */
+    @SuppressWarnings("unchecked")
+    private void createNewRep(int count) {
+        /*
+         * With "new Map4<K, V>[...]" in place of "new Map4[...]" it does not
+         * compile; as shown, it results in a warning about an unchecked
+         * conversion, though it cannot fail.
+         */
+        this.segments = new Map4[count];
+        for (int i = 0; i < count; i++) {
+            this.segments[i] = new Map4<K, V>(SEGMENT_HASH_TABLE_SIZE);
+        }
+        this.shift = Integer.SIZE - Integer.numberOfTrailingZeros(count);
+        this.size = new LongAdder();
+        this.cursor = 0;
+    }
+
+    /**
+     * Returns the segment {@code key} belongs in.
+     *
+     * @param key
+     *            the key
+     * @return the segment for {@code key}
+     */
+    private Map4<K, V> segmentFor(K key) {
+        int spread = key.hashCode() * SPREAD_MULTIPLIER;
+        // Shifting an int by 32 leaves it unchanged, so a single segment
+        // needs its own case
+        int index = 0;
+        if (this.shift < Integer.SIZE) {
+            index = spread >>> this.shift;
+        }
+        return this.segments[index];
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public Map4c() {
+
+        this(DEFAULT_SEGMENT_COUNT);
+
+    }
+
+    /**
+     * Constructor resulting in {@code segmentCount} segments, rounded up to a
+     * power of 2. More segments let more threads update the map at once.
+     *
+     * @param segmentCount
+     *            number of segments (and locks)
+     * @requires segmentCount > 0
+     * @ensures this = {}
+     */
+    public Map4c(int segmentCount) {
+        assert segmentCount > 0 : "Segment count must be greater than 0.";
+
+        this.segmentCount = segmentCountFor(segmentCount);
+        this.createNewRep(this.segmentCount);
+
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final Map<K, V> newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep(this.segmentCount);
+    }
+
+    @Override
+    public final void transferFrom(Map<K, V> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof Map4c<?, ?> : ""
+                + "Violation of: source is of dynamic type Map4c<?,?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type Map4c<?,?>,
+         * and the ?,? must be K,V or the call would not have compiled.
+         */
+        Map4c<K, V> localSource = (Map4c<K, V>) source;
+        this.segments = localSource.segments;
+        this.shift = localSource.shift;
+        this.size = localSource.size;
+        this.cursor = localSource.cursor;
+        this.segmentCount = localSource.segmentCount;
+        localSource.createNewRep(localSource.segmentCount);
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(K key, V value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+
+        Map4<K, V> segment = this.segmentFor(key);
+        synchronized (segment) {
+            assert !segment.hasKey(key) : ""
+                    + "Violation of: key is not in DOMAIN(this)";
+            segment.add(key, value);
+            this.size.increment();
+        }
+    }
+
+    @Override
+    public final Pair<K, V> remove(K key) {
+        assert key != null : "Violation of: key is not null";
+
+        Map4<K, V> segment = this.segmentFor(key);
+        synchronized (segment) {
+            assert segment.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+            Pair<K, V> result = segment.remove(key);
+            this.size.decrement();
+            return result;
+        }
+    }
+
+    @Override
+    public final Pair<K, V> removeAny() {
+        assert this.size() > 0 : "Violation of: this /= empty_set";
+
+        // Resume from the segment the last pair came from; one pass over the
+        // segments finds a pair unless other threads empty the map meanwhile
+        Pair<K, V> result = null;
+        int start = this.cursor;
+        int i = 0;
+        while (result == null && i < this.segments.length) {
+            int index = (start + i) & (this.segments.length - 1);
+            Map4<K, V> segment = this.segments[index];
+            synchronized (segment) {
+                if (segment.size() > 0) {
+                    result = segment.removeAny();
+                    this.size.decrement();
+                    this.cursor = index;
+                }
+            }
+            i++;
+        }
+        assert result != null : "Violation of: this /= empty_set";
+
+        return result;
+    }
+
+    @Override
+    public final V value(K key) {
+        assert key != null : "Violation of: key is not null";
+
+        Map4<K, V> segment = this.segmentFor(key);
+        synchronized (segment) {
+            assert segment.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+            return segment.value(key);
+        }
+    }
+
+    @Override
+    public final boolean hasKey(K key) {
+        assert key != null : "Violation of: key is not null";
+
+        Map4<K, V> segment = this.segmentFor(key);
+        synchronized (segment) {
+            return segment.hasKey(key);
+        }
+    }
+
+    @Override
+    public final int size() {
+        return this.size.intValue();
+    }
+
+    @Override
+    public final Iterator<Pair<K, V>> iterator() {
+        List<Pair<K, V>> pairs = new ArrayList<Pair<K, V>>();
+        for (Map4<K, V> segment : this.segments) {
+            synchronized (segment) {
+                for (Pair<K, V> pair : segment) {
+                    pairs.add(pair);
+                }
+            }
+        }
+        return new Map4cIterator(pairs.iterator());
+    }
+
+    /*
+     * Atomic compound operations ---------------------------------------------
+     */
+
+    /**
+     * Replaces the value of {@code key} with the result of
+     * {@code remapping.apply(key, [its current value or null])}, atomically.
+     * If the result is null, {@code key} is removed instead (or stays
+     * absent).
+     *
+     * @param key
+     *            the key to update
+     * @param remapping
+     *            computes the new value from the key and its current value
+     * @return the new value of {@code key}, or null if it is now absent
+     * @updates this
+     * @requires key /= null and remapping /= null
+     * @ensures <pre>
+     * compute = [remapping applied to key and its value in #this, or null]
+     *   and
+     * if compute /= null then this = (#this \ {(key, ...)}) union
+     *   {(key, compute)}  else  this = #this \ {(key, ...)}
+     * </pre>
+     */
+    public final V compute(K key,
+            BiFunction<? super K, ? super V, ? extends V> remapping) {
+        assert key != null : "Violation of: key is not null";
+        assert remapping != null : "Violation of: remapping is not null";
+
+        Map4<K, V> segment = this.segmentFor(key);
+        synchronized (segment) {
+            int before = segment.size();
+            V result = segment.compute(key, remapping);
+            this.size.add(segment.size() - before);
+            return result;
+        }
+    }
+
+    /**
+     * Adds {@code (key, value)} if {@code key} is absent, and otherwise
+     * replaces its value with {@code combiner.apply([its value], value)},
+     * atomically.
+     *
+     * @param key
+     *            the key to update
+     * @param value
+     *            the value to add or combine with
+     * @param combiner
+     *            combines the current value with {@code value}
+     * @return the new value of {@code key}
+     * @updates this
+     * @requires key /= null and value /= null and combiner /= null
+     * @ensures <pre>
+     * if key is in DOMAIN(#this) then
+     *   merge = combiner applied to (#this(key), value)
+     * else
+     *   merge = value
+     * and  this = (#this \ {(key, ...)}) union {(key, merge)}
+     * </pre>
+     */
+    public final V merge(K key, V value, BinaryOperator<V> combiner) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+        assert combiner != null : "Violation of: combiner is not null";
+
+        Map4<K, V> segment = this.segmentFor(key);
+        synchronized (segment) {
+            int before = segment.size();
+            V result = segment.merge(key, value, combiner);
+            this.size.add(segment.size() - before);
+            return result;
+        }
+    }
+
+    /**
+     * Adds {@code amount} to the count of {@code key} in {@code map},
+     * atomically, starting from 0 if {@code key} is absent.
+     *
+     * @param <K>
+     *            type of the keys
+     * @param map
+     *            the counts
+     * @param key
+     *            the key to count
+     * @param amount
+     *            the amount to add
+     * @return the new count of {@code key}
+     * @updates map
+     * @requires map /= null and key /= null
+     * @ensures <pre>
+     * if key is in DOMAIN(#map) then increment = #map(key) + amount
+     *   else increment = amount  and
+     * map = (#map \ {(key, ...)}) union {(key, increment)}
+     * </pre>
+     */
+    public static <K> int increment(Map4c<K, Integer> map, K key,
+            int amount) {
+        assert map != null : "Violation of: map is not null";
+
+        return map.merge(key, amount, Integer::sum);
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code Map4c}, over a
+     * copy of the pairs.
+     */
+    private final class Map4cIterator implements Iterator<Pair<K, V>> {
+
+        /**
+         * Iterator over the copy.
+         */
+        private Iterator<Pair<K, V>> pairs;
+
+        /**
+         * Constructor.
+         *
+         * @param pairs
+         *            iterator over the copy
+         */
+        Map4cIterator(Iterator<Pair<K, V>> pairs) {
+            this.pairs = pairs;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.pairs.hasNext();
+        }
+
+        @Override
+        public Pair<K, V> next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            return this.pairs.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
@@ -0,0 +1,212 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * JUnit test fixture for {@code Map4Snapshot}.
+ */
+public class Map4SnapshotTest {
+
+    /**
+     * Saves {@code map} to a temporary file and opens it again.
+     *
+     * @param map
+     *            the map to save
+     * @return the reopened snapshot
+     * @throws IOException
+     *             if the file cannot be written or read
+     */
+    private static Map4Snapshot<String, Integer> roundTrip(
+            Map<String, Integer> map) throws IOException {
+        Path file = Files.createTempFile("map4", ".snapshot");
+        file.toFile().deleteOnExit();
+        Map4Snapshot.save(map, file, Map4Snapshot.STRING,
+                Map4Snapshot.INTEGER);
+        return Map4Snapshot.open(file, Map4Snapshot.STRING,
+                Map4Snapshot.INTEGER);
+    }
+
+    /**
+     * Test an empty map.
+     *
+     * @throws IOException
+     *             if the snapshot cannot be written or read
+     */
+    @Test
+    public final void testEmpty() throws IOException {
+        Map4Snapshot<String, Integer> snapshot = roundTrip(
+                new Map4<String, Integer>());
+        assertEquals(0, snapshot.size());
+        assertFalse(snapshot.hasKey("missing"));
+        assertEquals(new Map1L<String, Integer>(), snapshot.load());
+    }
+
+    /**
+     * Test lookups in the mapping and a full load, with non-ASCII keys.
+     *
+     * @throws IOException
+     *             if the snapshot cannot be written or read
+     */
+    @Test
+    public final void testLookupAndLoad() throws IOException {
+        final int count = 1000;
+        Map<String, Integer> map = new Map4<String, Integer>();
+        for (int i = 0; i < count; i++) {
+            map.add("w\u00f6rd" + i, i);
+        }
+        Map4Snapshot<String, Integer> snapshot = roundTrip(map);
+        assertEquals(count, snapshot.size());
+        for (int i = 0; i < count; i++) {
+            assertTrue(snapshot.hasKey("w\u00f6rd" + i));
+            assertEquals(i, (int) snapshot.value("w\u00f6rd" + i));
+        }
+        assertFalse(snapshot.hasKey("word0"));
+        assertFalse(snapshot.hasKey("w\u00f6rd" + count));
+        assertEquals(map, snapshot.load());
+    }
+
+    /**
+     * Test a map with its own table size and spreading function: the
+     * snapshot keeps both, and cannot be opened without the function.
+     *
+     * @throws IOException
+     *             if the snapshot cannot be written or read
+     */
+    @Test
+    public final void testCustomSpreader() throws IOException {
+        final int count = 500;
+        final int tableSize = 37;
+        IntUnaryOperator identity = h -> h;
+        Map4<String, Integer> map = new Map4<String, Integer>(tableSize,
+                Float.POSITIVE_INFINITY, false, identity);
+        for (int i = 0; i < count; i++) {
+            map.add("word" + i, i);
+        }
+        Path file = Files.createTempFile("map4", ".snapshot");
+        file.toFile().deleteOnExit();
+        Map4Snapshot.save(map, file, Map4Snapshot.STRING,
+                Map4Snapshot.INTEGER);
+
+        boolean refused = false;
+        try {
+            Map4Snapshot.open(file, Map4Snapshot.STRING, Map4Snapshot.INTEGER);
+        } catch (IOException e) {
+            refused = true;
+        }
+        assertTrue(refused);
+
+        Map4Snapshot<String, Integer> snapshot = Map4Snapshot.open(file,
+                Map4Snapshot.STRING, Map4Snapshot.INTEGER, identity);
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, (int) snapshot.value("word" + i));
+        }
+        Map4<String, Integer> loaded = snapshot.load();
+        assertEquals(map, loaded);
+        assertTrue(loaded.tableSize() >= tableSize);
+        assertTrue(loaded.spreader() == identity);
+    }
+
+    /**
+     * Saves a few pairs and returns the bytes of the snapshot file.
+     *
+     * @return the bytes of the file
+     * @throws IOException
+     *             if the file cannot be written or read
+     */
+    private static byte[] snapshotBytes() throws IOException {
+        final int count = 50;
+        Map<String, Integer> map = new Map4<String, Integer>();
+        for (int i = 0; i < count; i++) {
+            map.add("word" + i, i);
+        }
+        Path file = Files.createTempFile("map4", ".snapshot");
+        file.toFile().deleteOnExit();
+        Map4Snapshot.save(map, file, Map4Snapshot.STRING,
+                Map4Snapshot.INTEGER);
+        return Files.readAllBytes(file);
+    }
+
+    /**
+     * Reports whether opening a snapshot file holding {@code bytes} fails
+     * with an {@code IOException}.
+     *
+     * @param bytes
+     *            the contents of the file
+     * @return true iff {@code open} refuses the file
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private static boolean refused(byte[] bytes) throws IOException {
+        Path file = Files.createTempFile("map4", ".snapshot");
+        file.toFile().deleteOnExit();
+        Files.write(file, bytes);
+        boolean refused = false;
+        try {
+            Map4Snapshot.open(file, Map4Snapshot.STRING, Map4Snapshot.INTEGER);
+        } catch (IOException e) {
+            refused = true;
+        }
+        return refused;
+    }
+
+    /**
+     * Test a snapshot cut short anywhere in its offsets or entries is refused
+     * when it is opened.
+     *
+     * @throws IOException
+     *             if a file cannot be written or read
+     */
+    @Test
+    public final void testTruncated() throws IOException {
+        byte[] bytes = snapshotBytes();
+        assertFalse(refused(bytes));
+        for (int length = 0; length < bytes.length; length++) {
+            assertTrue(refused(Arrays.copyOf(bytes, length)));
+        }
+    }
+
+    /**
+     * Test a snapshot with a bucket offset that goes backwards, or points
+     * past the end of the file, is refused when it is opened.
+     *
+     * @throws IOException
+     *             if a file cannot be written or read
+     */
+    @Test
+    public final void testCorruptOffsets() throws IOException {
+        final int headerSize = 5 * Integer.BYTES;
+        byte[] bytes = snapshotBytes();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int tableSize = buffer.getInt(2 * Integer.BYTES);
+        int last = headerSize + tableSize * Integer.BYTES;
+
+        byte[] backwards = bytes.clone();
+        ByteBuffer.wrap(backwards).putInt(headerSize + Integer.BYTES, -1);
+        assertTrue(refused(backwards));
+
+        byte[] notAtZero = bytes.clone();
+        ByteBuffer.wrap(notAtZero).putInt(headerSize, 1);
+        assertTrue(refused(notAtZero));
+
+        byte[] pastEnd = bytes.clone();
+        ByteBuffer.wrap(pastEnd).putInt(last, buffer.getInt(last) + 1);
+        assertTrue(refused(pastEnd));
+
+        byte[] shortOfEnd = bytes.clone();
+        ByteBuffer.wrap(shortOfEnd).putInt(last, buffer.getInt(last) - 1);
+        assertTrue(refused(shortOfEnd));
+    }
+
+}
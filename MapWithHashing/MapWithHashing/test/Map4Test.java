@@ -1,8 +1,22 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.StreamSupport;
+
+import org.junit.Test;
+
 import components.map.Map;
 import components.map.Map1L;
 
 /**
- * Customized JUnit test fixture for {@code Map4} using default constructor.
+ * Customized JUnit test fixture for {@code Map4} using default constructor,
+ * plus its hash spreading diagnostics, bulk operations, fail-fast iterator
+ * and spliterator.
  */
 public class Map4Test extends MapTest {
 
@@ -16,4 +30,197 @@ public class Map4Test extends MapTest {
         return new Map1L<String, String>();
     }
 
+    /**
+     * Test diagnostics agree with the contents of the map.
+     */
+    @Test
+    public final void testDiagnostics() {
+        final int count = 500;
+        Map4<String, String> map = new Map4<String, String>();
+        for (int i = 0; i < count; i++) {
+            map.add("key" + i, "value" + i);
+        }
+        Map4.Diagnostics diagnostics = map.diagnostics();
+        int[] histogram = diagnostics.histogram();
+        int entries = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            entries += i * histogram[i];
+        }
+        assertEquals(count, entries);
+        assertEquals(histogram.length - 1, diagnostics.maxChain());
+        assertTrue(histogram[diagnostics.maxChain()] > 0);
+        assertEquals((double) histogram[0] / diagnostics.bucketCount(),
+                diagnostics.emptyRatio(), 0.0);
+    }
+
+    /**
+     * Test the default spreader copes with hash codes that are all multiples
+     * of the table size, which the identity spreader puts in one bucket.
+     */
+    @Test
+    public final void testSpreaderClusteredHashCodes() {
+        final int size = 100;
+        final int count = 50;
+        final float noGrowth = 1000f;
+        Map4<Integer, Integer> identity = new Map4<Integer, Integer>(size,
+                noGrowth, false, IntUnaryOperator.identity());
+        Map4<Integer, Integer> spread = new Map4<Integer, Integer>(size,
+                noGrowth, false);
+        for (int i = 0; i < count; i++) {
+            identity.add(i * size, i);
+            spread.add(i * size, i);
+        }
+        assertEquals(count, identity.diagnostics().maxChain());
+        assertTrue(spread.diagnostics().maxChain() < count / 2);
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, (int) identity.value(i * size));
+            assertEquals(i, (int) spread.value(i * size));
+        }
+    }
+
+    /**
+     * Test putAll with a size hint smaller than the number of pairs.
+     */
+    @Test
+    public final void testPutAll() {
+        final int count = 300;
+        final int hint = 100;
+        List<Map.Pair<String, String>> pairs = new ArrayList<>();
+        Map<String, String> source = new Map1L<String, String>();
+        Map<String, String> exp = this.constructorRef();
+        exp.add("old", "value");
+        for (int i = 0; i < count; i++) {
+            source.add("key" + i, "value" + i);
+            exp.add("key" + i, "value" + i);
+        }
+        for (Map.Pair<String, String> pair : source) {
+            pairs.add(pair);
+        }
+        Map4<String, String> map = new Map4<String, String>();
+        map.add("old", "value");
+        map.putAll(pairs, hint);
+        assertEquals(exp, map);
+        assertEquals(exp.size(), map.size());
+    }
+
+    /**
+     * Test merge of two counting maps, with the same table size and with
+     * different table sizes.
+     */
+    @Test
+    public final void testMerge() {
+        final int count = 200;
+        final int sameSize = 101;
+        final int otherSize = 7;
+        for (int size : new int[] { sameSize, otherSize }) {
+            Map4<String, Integer> map = new Map4<String, Integer>();
+            Map4<String, Integer> other = new Map4<String, Integer>(size);
+            Map<String, Integer> exp = new Map1L<String, Integer>();
+            for (int i = 0; i < count; i++) {
+                map.add("key" + i, i);
+            }
+            for (int i = count / 2; i < count + count / 2; i++) {
+                other.add("key" + i, 1);
+            }
+            for (int i = 0; i < count + count / 2; i++) {
+                int value = 0;
+                if (i < count) {
+                    value += i;
+                }
+                if (i >= count / 2) {
+                    value += 1;
+                }
+                exp.add("key" + i, value);
+            }
+            map.merge(other, Integer::sum);
+            assertEquals(exp, map);
+            assertEquals(exp.size(), map.size());
+            assertEquals(count, other.size());
+        }
+    }
+
+    /**
+     * Test merging single keys agrees with counting them in a reference map.
+     */
+    @Test
+    public final void testMergeKey() {
+        final int count = 300;
+        Map4<String, Integer> map = new Map4<String, Integer>(7);
+        Map<String, Integer> exp = new Map1L<String, Integer>();
+        for (int i = 0; i < count; i++) {
+            String key = "key" + (i % (count / 3));
+            int result = map.merge(key, 1, Integer::sum);
+            if (exp.hasKey(key)) {
+                exp.replaceValue(key, exp.value(key) + 1);
+            } else {
+                exp.add(key, 1);
+            }
+            assertEquals(exp.value(key), Integer.valueOf(result));
+        }
+        assertEquals(exp, map);
+        assertEquals(exp.size(), map.size());
+    }
+
+    /**
+     * Test compute replaces, removes, skips and adds pairs as its function
+     * says.
+     */
+    @Test
+    public final void testCompute() {
+        Map4<String, Integer> map = new Map4<String, Integer>();
+        Map<String, Integer> exp = new Map1L<String, Integer>();
+        map.add("one", 1);
+        map.add("two", 2);
+        exp.add("one", 10);
+        exp.add("three", 3);
+        assertEquals(Integer.valueOf(10),
+                map.compute("one", (k, v) -> v * 10));
+        assertEquals(null, map.compute("two", (k, v) -> null));
+        assertEquals(null, map.compute("four", (k, v) -> null));
+        assertEquals(Integer.valueOf(3),
+                map.compute("three", (k, v) -> k.length() - 2));
+        assertEquals(exp, map);
+        assertEquals(exp.size(), map.size());
+    }
+
+    /**
+     * Test the iterator fails fast after the map is changed.
+     */
+    @Test
+    public final void testIteratorFailFast() {
+        Map4<String, String> map = new Map4<String, String>();
+        map.add("a", "1");
+        map.add("b", "2");
+        Iterator<Map.Pair<String, String>> it = map.iterator();
+        it.next();
+        map.add("c", "3");
+        boolean thrown = false;
+        try {
+            it.next();
+        } catch (ConcurrentModificationException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+    }
+
+    /**
+     * Test a parallel stream over the spliterator sees every pair once.
+     */
+    @Test
+    public final void testSpliteratorParallel() {
+        final int count = 10000;
+        Map4<Integer, Integer> map = new Map4<Integer, Integer>();
+        long expected = 0;
+        for (int i = 0; i < count; i++) {
+            map.add(i, i);
+            expected += i;
+        }
+        assertEquals(count,
+                StreamSupport.stream(map.spliterator(), true).count());
+        assertEquals(expected, StreamSupport.stream(map.spliterator(), true)
+                .mapToLong(p -> p.value()).sum());
+        assertEquals(count, StreamSupport.stream(map.spliterator(), true)
+                .map(p -> p.key()).distinct().count());
+    }
+
 }
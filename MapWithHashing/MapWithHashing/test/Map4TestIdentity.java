@@ -0,0 +1,34 @@
+import java.util.function.IntUnaryOperator;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Customized JUnit test fixture for {@code Map4} using non-default constructor
+ * with hash table size 100 and hash codes used as they are, without
+ * spreading.
+ */
+public class Map4TestIdentity extends MapTest {
+
+    /**
+     * Size of hash table to be used in tests.
+     */
+    private static final int TEST_HASH_TABLE_SIZE = 100;
+
+    /**
+     * Load factor to be used in tests.
+     */
+    private static final float TEST_LOAD_FACTOR = 0.75f;
+
+    @Override
+    protected final Map<String, String> constructorTest() {
+        return new Map4<String, String>(TEST_HASH_TABLE_SIZE, TEST_LOAD_FACTOR,
+                false, IntUnaryOperator.identity());
+    }
+
+    @Override
+    protected final Map<String, String> constructorRef() {
+        return new Map1L<String, String>();
+    }
+
+}
@@ -0,0 +1,25 @@
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Customized JUnit test fixture for {@code Map4a} using non-default
+ * constructor and expected size 1, so the table has to grow.
+ */
+public class Map4aTest1 extends MapTest {
+
+    /**
+     * Number of entries the table is sized for in tests.
+     */
+    private static final int TEST_EXPECTED_SIZE = 1;
+
+    @Override
+    protected final Map<String, String> constructorTest() {
+        return new Map4a<String, String>(TEST_EXPECTED_SIZE);
+    }
+
+    @Override
+    protected final Map<String, String> constructorRef() {
+        return new Map1L<String, String>();
+    }
+
+}
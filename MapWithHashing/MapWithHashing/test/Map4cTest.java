@@ -0,0 +1,79 @@
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Customized JUnit test fixture for {@code Map4c} using default constructor,
+ * plus its atomic compound operations.
+ */
+public class Map4cTest extends MapTest {
+
+    @Override
+    protected final Map<String, String> constructorTest() {
+        return new Map4c<String, String>();
+    }
+
+    @Override
+    protected final Map<String, String> constructorRef() {
+        return new Map1L<String, String>();
+    }
+
+    /**
+     * Test compute adding, replacing and removing a key.
+     */
+    @Test
+    public final void testCompute() {
+        Map4c<String, String> map = new Map4c<String, String>();
+        assertEquals("a", map.compute("k", (k, v) -> "a"));
+        assertEquals("ab", map.compute("k", (k, v) -> v + "b"));
+        assertEquals("ab", map.value("k"));
+        assertEquals(null, map.compute("k", (k, v) -> null));
+        assertEquals(0, map.size());
+    }
+
+    /**
+     * Test merge adding and combining.
+     */
+    @Test
+    public final void testMerge() {
+        Map4c<String, String> map = new Map4c<String, String>();
+        assertEquals("a", map.merge("k", "a", String::concat));
+        assertEquals("ab", map.merge("k", "b", String::concat));
+        assertEquals(1, map.size());
+        assertEquals("ab", map.value("k"));
+    }
+
+    /**
+     * Test increment from several threads at once on overlapping keys.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting for the threads
+     */
+    @Test
+    public final void testIncrementConcurrently() throws InterruptedException {
+        final int threads = 4;
+        final int keys = 100;
+        final int rounds = 1000;
+        final Map4c<Integer, Integer> map = new Map4c<Integer, Integer>(8);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                for (int r = 0; r < rounds; r++) {
+                    Map4c.increment(map, r % keys, 1);
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(keys, map.size());
+        for (int k = 0; k < keys; k++) {
+            assertEquals(threads * rounds / keys, (int) map.value(k));
+        }
+    }
+
+}
@@ -257,4 +257,35 @@ public abstract class MapTest {
         assertEquals(exp, map);
     }
 
-}
\ No newline at end of file
+    /*
+     * Testing many entries, enough to make a hash table resize
+     */
+    @Test
+    public final void testAddRemoveMany() {
+        final int count = 1000;
+        Map<String, String> map = this.createFromArgsTest();
+        Map<String, String> exp = this.createFromArgsRef();
+        for (int i = 0; i < count; i++) {
+            map.add("key" + i, "value" + i);
+            exp.add("key" + i, "value" + i);
+        }
+        assertEquals(exp.size(), map.size());
+        assertEquals(exp, map);
+        for (int i = 0; i < count; i++) {
+            assertTrue(map.hasKey("key" + i));
+            assertEquals(exp.value("key" + i), map.value("key" + i));
+        }
+        for (int i = 0; i < count; i += 2) {
+            assertEquals(exp.remove("key" + i), map.remove("key" + i));
+        }
+        assertEquals(exp.size(), map.size());
+        assertEquals(exp, map);
+        while (exp.size() > 0) {
+            Map.Pair<String, String> pair = map.removeAny();
+            assertEquals(exp.remove(pair.key()), pair);
+        }
+        assertEquals(exp.size(), map.size());
+        assertEquals(exp, map);
+    }
+
+}
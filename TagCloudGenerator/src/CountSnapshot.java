@@ -0,0 +1,195 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Word counts of the first {@code offset} bytes of an append-only file, kept
+ * on disk between runs so only the bytes appended since can be counted.
+ *
+ * <p>
+ * File format, big-endian: the int {@code MAGIC}, the int {@code VERSION},
+ * the long offset, the int number of words, then for every word the int
+ * number of its UTF-8 bytes, those bytes, and the int count.
+ *
+ * @author Charan Nanduri and Nathan Damian
+ */
+public final class CountSnapshot {
+
+    /**
+     * First four bytes of every snapshot file.
+     */
+    private static final int MAGIC = 0x54434331;
+
+    /**
+     * Version of the file format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Number of bytes before the first word: magic, version, offset and
+     * number of words.
+     */
+    private static final int HEADER_SIZE = 3 * Integer.BYTES + Long.BYTES;
+
+    /**
+     * Number of bytes of the input the counts cover.
+     */
+    private long offset;
+
+    /**
+     * Counts of the words in those bytes.
+     */
+    private final WordCounter counter;
+
+    /**
+     * Constructor for an empty snapshot, covering no bytes.
+     */
+    public CountSnapshot() {
+        this(0, new WordCounter());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param offset
+     *            number of bytes the counts cover
+     * @param counter
+     *            counts of the words in those bytes
+     */
+    private CountSnapshot(long offset, WordCounter counter) {
+        this.offset = offset;
+        this.counter = counter;
+    }
+
+    /**
+     * Reads the snapshot kept in {@code file}.
+     *
+     * @param file
+     *            the snapshot file
+     * @return the snapshot, or an empty one if {@code file} does not exist
+     * @throws IOException
+     *             if the file cannot be read or is not a snapshot
+     */
+    public static CountSnapshot load(Path file) throws IOException {
+        assert file != null : "Violation of: file is not null";
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a count snapshot");
+            }
+            long offset = in.readLong();
+            int words = in.readInt();
+            /*
+             * Every word takes at least its length and its count, so a damaged
+             * header cannot make us size the counter (or a word buffer below)
+             * past what the file could hold
+             */
+            long rest = Files.size(file) - HEADER_SIZE;
+            if (offset < 0 || words < 0 || words > rest / (2 * Integer.BYTES)) {
+                throw new IOException(file + " is not a count snapshot");
+            }
+
+            WordCounter counter = new WordCounter(words);
+            byte[] bytes = new byte[64];
+            for (int i = 0; i < words; i++) {
+                int length = in.readInt();
+                if (length < 0 || length > rest) {
+                    throw new IOException(file + " is not a count snapshot");
+                }
+                if (length > bytes.length) {
+                    bytes = new byte[length];
+                }
+                in.readFully(bytes, 0, length);
+                String word = new String(bytes, 0, length,
+                        StandardCharsets.UTF_8);
+                counter.increment(word, in.readInt());
+            }
+
+            return new CountSnapshot(offset, counter);
+        } catch (NoSuchFileException e) {
+            return new CountSnapshot();
+        }
+    }
+
+    /**
+     * Writes this snapshot to {@code file}. It is written next to it first
+     * and then moved over it, so an interrupted save leaves the previous
+     * snapshot intact.
+     *
+     * @param file
+     *            the snapshot file
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        assert file != null : "Violation of: file is not null";
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(this.offset);
+            out.writeInt(this.counter.size());
+            this.counter.forEach(new ObjIntConsumer<String>() {
+                @Override
+                public void accept(String word, int count) {
+                    try {
+                        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+                        out.writeInt(bytes.length);
+                        out.write(bytes);
+                        out.writeInt(count);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the number of bytes of the input the counts cover.
+     *
+     * @return the offset to continue counting at
+     */
+    public long offset() {
+        return this.offset;
+    }
+
+    /**
+     * Sets the number of bytes of the input the counts cover.
+     *
+     * @param offset
+     *            the new offset
+     * @requires offset >= 0
+     */
+    public void setOffset(long offset) {
+        assert offset >= 0 : "Violation of: offset >= 0";
+
+        this.offset = offset;
+    }
+
+    /**
+     * Returns the counts, which may be updated in place.
+     *
+     * @return counts of the words in the first {@code offset} bytes
+     */
+    public WordCounter counter() {
+        return this.counter;
+    }
+
+}
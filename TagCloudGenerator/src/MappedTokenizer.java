@@ -0,0 +1,317 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import components.set.Set;
+
+/**
+ * Splits a file into words by memory-mapping it and classifying every byte
+ * with a 256-entry lookup table, instead of reading it line by line and
+ * checking every character against a {@code Set<Character>}. Words are handed
+ * out as byte offsets into the mapping; nothing is allocated for separators.
+ *
+ * <p>
+ * All separators are ASCII, so the bytes of a multi-byte UTF-8 character are
+ * never separators and always stay inside one word.
+ *
+ * @author Charan Nanduri and Nathan Damian
+ */
+public final class MappedTokenizer {
+
+    /**
+     * Receives the words found by {@code tokenize}.
+     */
+    interface WordSink {
+
+        /**
+         * Called once per word, in file order.
+         *
+         * @param text
+         *            the mapped region the word is in; only valid during
+         *            this call
+         * @param start
+         *            index of the first byte of the word in {@code text}
+         * @param end
+         *            index one past the last byte of the word in {@code text}
+         */
+        void word(ByteBuffer text, int start, int end);
+    }
+
+    /**
+     * Largest number of bytes mapped at once.
+     */
+    private static final int WINDOW_SIZE = 1 << 30;
+
+    /**
+     * Number of different byte values.
+     */
+    private static final int BYTE_VALUES = 256;
+
+    /**
+     * Largest ASCII character.
+     */
+    private static final int MAX_ASCII = 0x7F;
+
+    /**
+     * No argument constructor--private to prevent instantiation.
+     */
+    private MappedTokenizer() {
+    }
+
+    /**
+     * Builds the byte classification table for a set of separator
+     * characters. Line terminators are separators as well, since the line
+     * based reader never sees them.
+     *
+     * @param breaks
+     *            set of characters that signify breaks in text
+     * @return table where entry b is true iff byte b is a separator
+     * @ensures <pre>
+     * |separatorTable| = 256  and
+     * separatorTable[b] = (b is '\n' or '\r' or
+     *                      (b <= 0x7F and (char) b is in breaks))
+     * </pre>
+     */
+    static boolean[] separatorTable(Set<Character> breaks) {
+        assert breaks != null : "Violation of: breaks is not null";
+
+        boolean[] table = new boolean[BYTE_VALUES];
+        for (int b = 0; b <= MAX_ASCII; b++) {
+            table[b] = breaks.contains((char) b);
+        }
+        table['\n'] = true;
+        table['\r'] = true;
+
+        return table;
+    }
+
+    /**
+     * Memory-maps {@code file} and reports every maximal run of non-separator
+     * bytes to {@code sink}.
+     *
+     * @param file
+     *            the file to split into words
+     * @param separators
+     *            byte classification table from {@code separatorTable}
+     * @param sink
+     *            receives the words
+     * @return the number of bytes scanned, i.e. the size of the file when
+     *         the scan started
+     * @throws IOException
+     *             if the file cannot be opened or mapped
+     * @requires |separators| = 256
+     */
+    static long tokenize(Path file, boolean[] separators, WordSink sink)
+            throws IOException {
+        // Fix the end once, so bytes appended during the scan are left out of
+        // both halves instead of landing in the last word
+        long end = Files.size(file);
+        long resume = tokenize(file, 0, end, separators, sink);
+        return tokenizeRest(file, resume, end, sink);
+    }
+
+    /**
+     * Memory-maps {@code file} from offset {@code start} up to offset
+     * {@code end} and reports every maximal run of non-separator bytes that
+     * is followed by a separator to {@code sink}. A word running into
+     * {@code end} is not reported, since more of it may still be appended;
+     * its offset is returned so a later call can start there.
+     *
+     * @param file
+     *            the file to split into words
+     * @param start
+     *            offset to start at; must not be inside a word
+     * @param end
+     *            offset to stop at, normally the size of the file when the
+     *            caller looked; the file may have grown since
+     * @param separators
+     *            byte classification table from {@code separatorTable}
+     * @param sink
+     *            receives the words
+     * @return the offset of the word running into {@code end}, or {@code end}
+     *         if the bytes before it end with a separator
+     * @throws IOException
+     *             if the file cannot be opened or mapped, or is shorter than
+     *             {@code end}
+     * @requires <pre>
+     * 0 <= start <= end <= [size of file]  and  |separators| = 256
+     * </pre>
+     */
+    static long tokenize(Path file, long start, long end,
+            boolean[] separators, WordSink sink) throws IOException {
+        return tokenize(file, start, end, separators, sink, WINDOW_SIZE);
+    }
+
+    /**
+     * Same as {@code tokenize(file, start, end, separators, sink)}, mapping at
+     * most {@code windowSize} bytes at once. A word running from one window
+     * into the next is scanned again from its start by the next window, so it
+     * is still reported whole, unless it is longer than a whole window.
+     *
+     * @param file
+     *            the file to split into words
+     * @param start
+     *            offset to start at; must not be inside a word
+     * @param end
+     *            offset to stop at
+     * @param separators
+     *            byte classification table from {@code separatorTable}
+     * @param sink
+     *            receives the words
+     * @param windowSize
+     *            largest number of bytes mapped at once
+     * @return the offset of the word running into {@code end}, or {@code end}
+     *         if the bytes before it end with a separator
+     * @throws IOException
+     *             if the file cannot be opened or mapped, or is shorter than
+     *             {@code end}
+     * @requires <pre>
+     * 0 <= start <= end <= [size of file]  and  |separators| = 256  and
+     * windowSize > 0
+     * </pre>
+     */
+    static long tokenize(Path file, long start, long end,
+            boolean[] separators, WordSink sink, int windowSize)
+            throws IOException {
+        assert file != null : "Violation of: file is not null";
+        assert start >= 0 : "Violation of: 0 <= start";
+        assert start <= end : "Violation of: start <= end";
+        assert separators != null : "Violation of: separators is not null";
+        assert separators.length == BYTE_VALUES : ""
+                + "Violation of: |separators| = 256";
+        assert sink != null : "Violation of: sink is not null";
+        assert windowSize > 0 : "Violation of: windowSize > 0";
+
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            if (channel.size() < end) {
+                throw new IOException(file + " got shorter while reading it");
+            }
+            long size = end;
+            long base = start;
+
+            while (base < size) {
+                int length = (int) Math.min(size - base, windowSize);
+                MappedByteBuffer text = channel
+                        .map(FileChannel.MapMode.READ_ONLY, base, length);
+                boolean lastWindow = base + length == size;
+
+                // Scan the window, remembering where the current word began
+                int wordStart = -1;
+                for (int i = 0; i < length; i++) {
+                    boolean separator = separators[text.get(i) & 0xFF];
+                    if (separator && wordStart >= 0) {
+                        sink.word(text, wordStart, i);
+                        wordStart = -1;
+                    } else if (!separator && wordStart < 0) {
+                        wordStart = i;
+                    }
+                }
+
+                // A word running into the end of the window is either left
+                // for later at the end of the file, or gets rescanned from its
+                // start by the next window
+                if (wordStart < 0) {
+                    base += length;
+                } else if (lastWindow) {
+                    return base + wordStart;
+                } else if (wordStart == 0) {
+                    // Longer than a whole window, nothing to do but split it
+                    sink.word(text, 0, length);
+                    base += length;
+                } else {
+                    base += wordStart;
+                }
+            }
+
+            return size;
+        }
+    }
+
+    /**
+     * Reports everything in {@code file} from offset {@code start} up to
+     * offset {@code end} to {@code sink} as one word, if there is anything.
+     * This is the word {@code tokenize(file, start, end, separators, sink)}
+     * leaves out; pass the same {@code end}, so bytes appended since are not
+     * glued onto it.
+     *
+     * @param file
+     *            the file
+     * @param start
+     *            offset returned by {@code tokenize}
+     * @param end
+     *            offset {@code tokenize} stopped at
+     * @param sink
+     *            receives the word
+     * @return {@code end}
+     * @throws IOException
+     *             if the file cannot be opened or mapped, or is shorter than
+     *             {@code end}
+     * @requires <pre>
+     * 0 <= start <= end <= [size of file]  and
+     * [there are no separators in file from start to end]
+     * </pre>
+     */
+    static long tokenizeRest(Path file, long start, long end, WordSink sink)
+            throws IOException {
+        return tokenizeRest(file, start, end, sink, WINDOW_SIZE);
+    }
+
+    /**
+     * Same as {@code tokenizeRest(file, start, end, sink)}, mapping at most
+     * {@code windowSize} bytes at once; a word longer than that is reported
+     * in pieces.
+     *
+     * @param file
+     *            the file
+     * @param start
+     *            offset returned by {@code tokenize}
+     * @param end
+     *            offset {@code tokenize} stopped at
+     * @param sink
+     *            receives the word
+     * @param windowSize
+     *            largest number of bytes mapped at once
+     * @return {@code end}
+     * @throws IOException
+     *             if the file cannot be opened or mapped, or is shorter than
+     *             {@code end}
+     * @requires <pre>
+     * 0 <= start <= end <= [size of file]  and
+     * [there are no separators in file from start to end]  and
+     * windowSize > 0
+     * </pre>
+     */
+    static long tokenizeRest(Path file, long start, long end, WordSink sink,
+            int windowSize) throws IOException {
+        assert file != null : "Violation of: file is not null";
+        assert start >= 0 : "Violation of: 0 <= start";
+        assert start <= end : "Violation of: start <= end";
+        assert sink != null : "Violation of: sink is not null";
+        assert windowSize > 0 : "Violation of: windowSize > 0";
+
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            if (channel.size() < end) {
+                throw new IOException(file + " got shorter while reading it");
+            }
+            long size = end;
+
+            long base = start;
+            while (base < size) {
+                int length = (int) Math.min(size - base, windowSize);
+                sink.word(
+                        channel.map(FileChannel.MapMode.READ_ONLY, base, length),
+                        0, length);
+                base += length;
+            }
+
+            return size;
+        }
+    }
+
+}
@@ -1,8 +1,28 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import components.map.Map;
 import components.map.Map.Pair;
-import components.map.Map1L;
 import components.set.Set;
 import components.set.Set1L;
 import components.simplereader.SimpleReader;
@@ -25,15 +45,37 @@ public final class TagCloudGenerator {
     }
 
     // Constant separators to find when a tag has ended
-    private static final String SEPARATORS = " .,:;'{][}|><?!~1234567890"
+    static final String SEPARATORS = " .,:;'{][}|><?!~1234567890"
             + "@#$%^&*()-_=+";
 
-    // Sorts the value of integers in certain map Pairs in decreasing order
-    private static class CompareInteger implements Comparator<Map.Pair<String, Integer>> {
+    // Largest ASCII character
+    private static final char MAX_ASCII = 0x7F;
+
+    // Number of lines a single fork-join worker counts without splitting
+    private static final int LINES_PER_CHUNK = 2048;
+
+    // Number of command line arguments batch mode needs at least
+    private static final int BATCH_ARGS = 4;
+
+    // Number of command line arguments update mode needs at least
+    private static final int UPDATE_ARGS = 4;
+
+    // Units for the batch throughput summary
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+
+    // Sorts the value of integers in certain map Pairs in decreasing order,
+    // breaking ties alphabetically so the cut at n does not depend on the
+    // order the words came out of the map
+    static class CompareInteger implements Comparator<Map.Pair<String, Integer>> {
         @Override
         public int compare(Map.Pair<String, Integer> int1,
                 Map.Pair<String, Integer> int2) {
-            return int2.value().compareTo(int1.value());
+            int result = int2.value().compareTo(int1.value());
+            if (result == 0) {
+                result = int1.key().compareTo(int2.key());
+            }
+            return result;
         }
     }
 
@@ -55,7 +97,7 @@ public final class TagCloudGenerator {
      * @ensures breaks = " + / + ` + characters in the str
      *
      **/
-    private static Set<Character> generateBreaks(String str) {
+    static Set<Character> generateBreaks(String str) {
 
         // Create a new instance of a Set
         Set<Character> breaks = new Set1L<Character>();
@@ -92,12 +134,40 @@ public final class TagCloudGenerator {
      *          {@code 0 <= position < |text|}
      * </pre>
      */
-    private static String nextCollection(String text, int pos,
+    static String nextCollection(String text, int pos,
             Set<Character> separators) {
         assert text != null : "Violation of: text is not null.";
         assert separators != null : "Violation of: separators is not null.";
         assert pos < text.length() : "Violation of: position < |text|";
 
+        //Return the word or separator.
+
+        return text.substring(pos, collectionEnd(text, pos, separators));
+    }
+
+    /**
+     * Returns the index just past the first string of Characters that does
+     * not contain a break, or the first string of breaks, starting at
+     * {@code pos}; the same string {@code nextCollection} returns, without
+     * allocating it.
+     *
+     * @param text
+     *            the String containing either a break or character collection
+     * @param pos
+     *            the starting index
+     * @param separators
+     *            the {@code Set} of separator characters
+     * @return the index of the end of the word or separator string
+     * @requires <pre>
+     *          {@code 0 <= position < |text|}
+     * </pre>
+     * @ensures <pre>
+     * text[pos, collectionEnd) = nextCollection(text, pos, separators)
+     * </pre>
+     */
+    static int collectionEnd(String text, int pos,
+            Set<Character> separators) {
+
         // Check if we have a breaking character
         boolean breakChar = separators.contains(text.charAt(pos));
 
@@ -109,9 +179,93 @@ public final class TagCloudGenerator {
             finalPos++;
         }
 
-        //Return the word or separator.
+        return finalPos;
+    }
 
-        return text.substring(pos, finalPos);
+    /**
+     * Returns {@code text[start, end)} in lower case. ASCII words are folded
+     * directly, and come back without any copy if they have no capital
+     * letters; anything else goes through {@code toLowerCase(Locale.ROOT)},
+     * so the result does not depend on the default locale of the machine.
+     *
+     * @param text
+     *            the text the word is in
+     * @param start
+     *            index of the first character of the word
+     * @param end
+     *            index one past the last character of the word
+     * @return the word in lower case
+     * @requires 0 <= start <= end <= |text|
+     */
+    static String foldedWord(String text, int start, int end) {
+        assert text != null : "Violation of: text is not null";
+        assert 0 <= start : "Violation of: 0 <= start";
+        assert start <= end : "Violation of: start <= end";
+        assert end <= text.length() : "Violation of: end <= |text|";
+
+        // Look for capitals, and for anything that is not ASCII
+        boolean ascii = true;
+        boolean capitals = false;
+        for (int i = start; i < end && ascii; i++) {
+            char c = text.charAt(i);
+            ascii = c <= MAX_ASCII;
+            capitals = capitals || ('A' <= c && c <= 'Z');
+        }
+
+        String word;
+        if (!ascii) {
+            word = text.substring(start, end).toLowerCase(Locale.ROOT);
+        } else if (capitals) {
+            char[] folded = new char[end - start];
+            for (int i = start; i < end; i++) {
+                char c = text.charAt(i);
+                if ('A' <= c && c <= 'Z') {
+                    c += 'a' - 'A';
+                }
+                folded[i - start] = c;
+            }
+            word = new String(folded);
+        } else if (start == 0 && end == text.length()) {
+            word = text;
+        } else {
+            word = text.substring(start, end);
+        }
+
+        return word;
+    }
+
+    /**
+     * Finds all collections in a single line and increments the count of each
+     * word.
+     *
+     * @param line
+     *            the line to be counted
+     * @param breaks
+     *            set of characters that signify breaks in text
+     * @param counter
+     *            counts of the words
+     * @updates counter
+     */
+    private static void countLine(String line, Set<Character> breaks,
+            WordCounter counter) {
+
+        // Reset the position
+        int pos = 0;
+
+        while (pos < line.length()) {
+
+            // Find the next collection of letters before a break or a break
+            // char
+            int end = collectionEnd(line, pos, breaks);
+
+            // Check what came back, folding the case of words only
+            if (!breaks.contains(line.charAt(pos))) {
+                counter.increment(foldedWord(line, pos, end));
+            }
+
+            // Update our position
+            pos = end;
+        }
     }
 
     /**
@@ -123,57 +277,395 @@ public final class TagCloudGenerator {
      *            input file to be counted
      * @param breaks
      *            set of characters that signify breaks in text
+     * @param metrics
+     *            where the time spent and the counts are recorded
      * @replaces countMap
      * @requires input is open
      *
      */
-    private static Map<String, Integer> readInput(Set<Character> breaks,
-            SimpleReader input) {
+    static Map<String, Integer> readInput(Set<Character> breaks,
+            SimpleReader input, TagCloudMetrics metrics) {
 
-        // Create a new map to hold the words and counts
-        Map<String, Integer> countMap = new Map1L<String, Integer>();
+        // Create a new counter to hold the words and counts
+        WordCounter counter = new WordCounter();
 
         // While we have not reached the end of the files lines, go through
-        // the file
+        // the file; reading and counting alternate line by line, so the
+        // whole loop is timed once, as counting
+        long start = metrics.start();
+        long lines = 0;
         while (!input.atEOS()) {
+            String line = input.nextLine();
+            countLine(line, breaks, counter);
+            lines++;
+        }
+        Map<String, Integer> countMap = counter.toMap();
+        metrics.stop(TagCloudMetrics.Stage.COUNT, start);
+        metrics.addLines(lines);
+        metrics.counted(counter);
 
-            // Reset the position and get the next line
-            int pos = 0;
-            String line = input.nextLine().toLowerCase();
+        return countMap;
+    }
 
-            while (pos < line.length()) {
+    /**
+     * Turns the words found by {@code MappedTokenizer} into lower case
+     * {@code String}s and counts them, the same way {@code foldedWord} does:
+     * ASCII bytes are folded while they are copied out of the mapping, and
+     * only words with other characters go through
+     * {@code toLowerCase(Locale.ROOT)}.
+     */
+    private static final class CountingSink
+            implements MappedTokenizer.WordSink {
 
-                // Get the next collection of letters before a break or a break
-                // char
-                String col = nextCollection(line, pos, breaks);
+        /**
+         * Counts of the words.
+         */
+        private final WordCounter counter;
 
-                // Check what came back
-                if (!breaks.contains(col.charAt(0))) {
-                    boolean exists = countMap.hasKey(col);
+        /**
+         * Reused to copy the bytes of a word out of the mapping.
+         */
+        private byte[] scratch = new byte[64];
 
-                    if (exists) {
-                        int newWordCount = countMap.value(col) + 1;
-                        countMap.remove(col);
-                        countMap.add(col, newWordCount);
-                    } else {
-                        countMap.add(col, 1);
-                    }
-                }
+        /**
+         * Constructor.
+         *
+         * @param counter
+         *            where the words are counted
+         */
+        CountingSink(WordCounter counter) {
+            this.counter = counter;
+        }
 
-                // Update our position
-                pos = pos + col.length();
+        @Override
+        public void word(ByteBuffer text, int start, int end) {
+            int length = end - start;
+            if (length > this.scratch.length) {
+                this.scratch = new byte[2 * length];
             }
 
+            // Fold ASCII capitals on the way out of the mapping
+            boolean ascii = true;
+            for (int i = 0; i < length; i++) {
+                byte b = text.get(start + i);
+                if ('A' <= b && b <= 'Z') {
+                    b += 'a' - 'A';
+                }
+                ascii = ascii && b >= 0;
+                this.scratch[i] = b;
+            }
+
+            String word;
+            if (ascii) {
+                word = new String(this.scratch, 0, length,
+                        StandardCharsets.ISO_8859_1);
+            } else {
+                word = new String(this.scratch, 0, length,
+                        StandardCharsets.UTF_8).toLowerCase(Locale.ROOT);
+            }
+            this.counter.increment(word);
         }
+    }
+
+    /**
+     * Same as {@code readInput}, but memory-maps the file and splits it with
+     * {@code MappedTokenizer} instead of reading it line by line. Only the
+     * words themselves are turned into {@code String}s.
+     *
+     * @param inputFile
+     *            name of the input file to be counted
+     * @param separators
+     *            byte classification table from
+     *            {@code MappedTokenizer.separatorTable}
+     * @param metrics
+     *            where the time spent and the counts are recorded
+     * @return map of words and counts
+     * @throws IOException
+     *             if the file cannot be read
+     * @ensures readInputMapped = [the same map readInput would return]
+     */
+    static Map<String, Integer> readInputMapped(String inputFile,
+            boolean[] separators, TagCloudMetrics metrics) throws IOException {
+        long start = metrics.start();
+
+        // Create a new counter to hold the words and counts
+        WordCounter counter = new WordCounter();
+
+        MappedTokenizer.tokenize(Paths.get(inputFile), separators,
+                new CountingSink(counter));
+        Map<String, Integer> countMap = counter.toMap();
+
+        metrics.stop(TagCloudMetrics.Stage.COUNT, start);
+        metrics.counted(counter);
 
         return countMap;
     }
 
     /**
-     * This takes in the list of words and associated counts and first sorts the
-     * words by their counts, finds the max and min, sorts the words
-     * alphabetically, and creates a tag for the words that it written to the
-     * output HTML file
+     * Brings the snapshot of an append-only input file up to date by counting
+     * only the text appended since the snapshot was taken, saves it, and
+     * writes the tag cloud of the whole file. If there is no snapshot yet, or
+     * the file got shorter than the snapshot, the whole file is counted.
+     *
+     * <p>
+     * The snapshot only ever covers complete words, so a word still being
+     * appended to at the end of the file is counted for this tag cloud but
+     * left out of the snapshot.
+     *
+     * @param input
+     *            the input file
+     * @param outputFile
+     *            name of the output file (.html)
+     * @param n
+     *            number of words with highest counts
+     * @param snapshotFile
+     *            where the snapshot is kept
+     * @param out
+     *            where messages go
+     * @param metrics
+     *            where the time spent and the counts are recorded
+     * @throws IOException
+     *             if a file cannot be read or written
+     * @requires n >= 0 and out.is_open
+     */
+    static void runIncremental(Path input, String outputFile, int n,
+            Path snapshotFile, SimpleWriter out, TagCloudMetrics metrics)
+            throws IOException {
+        assert n >= 0 : "Violation of: n >= 0";
+
+        CountSnapshot snapshot = CountSnapshot.load(snapshotFile);
+        // Only count up to the size seen now; anything appended while this
+        // runs is left for the next update
+        long end = Files.size(input);
+        if (snapshot.offset() > end) {
+            out.println(input + " is shorter than its snapshot, recounting");
+            snapshot = new CountSnapshot();
+        }
+
+        // Count the complete words of the new tail only
+        long start = metrics.start();
+        boolean[] separators = MappedTokenizer
+                .separatorTable(generateBreaks(SEPARATORS));
+        WordCounter counter = snapshot.counter();
+        CountingSink sink = new CountingSink(counter);
+        long resume = MappedTokenizer.tokenize(input, snapshot.offset(), end,
+                separators, sink);
+        long newBytes = resume - snapshot.offset();
+        snapshot.setOffset(resume);
+        snapshot.save(snapshotFile);
+
+        // The unfinished last word still shows up in this tag cloud
+        MappedTokenizer.tokenizeRest(input, resume, end, sink);
+        Map<String, Integer> counts = counter.toMap();
+        metrics.stop(TagCloudMetrics.Stage.COUNT, start);
+        metrics.counted(counter);
+
+        writeTagCloud(outputFile, input.toString(), Math.min(n, counts.size()),
+                counts, metrics);
+
+        out.println("Counted " + newBytes + " new bytes of " + input);
+    }
+
+    /**
+     * Counts the words of a range of lines, splitting the range in half and
+     * forking until it is at most {@code LINES_PER_CHUNK} lines long. The
+     * partial counters of the two halves are then merged on the way back up,
+     * so the merges form a reduction tree. The most entries two partial
+     * counters held when they were merged is kept in {@code peak}.
+     */
+    private static final class CountTask extends RecursiveTask<WordCounter> {
+
+        /**
+         * Serialization id (RecursiveTask is Serializable).
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * All lines of the input.
+         */
+        private final String[] lines;
+
+        /**
+         * First line counted by this task.
+         */
+        private final int low;
+
+        /**
+         * One past the last line counted by this task.
+         */
+        private final int high;
+
+        /**
+         * Set of characters that signify breaks in text; only read.
+         */
+        private final Set<Character> breaks;
+
+        /**
+         * Largest number of entries in two partial counters being merged,
+         * shared by all the tasks of one count.
+         */
+        private final AtomicInteger peak;
+
+        /**
+         * Constructor.
+         *
+         * @param lines
+         *            all lines of the input
+         * @param low
+         *            first line to count
+         * @param high
+         *            one past the last line to count
+         * @param breaks
+         *            set of characters that signify breaks in text
+         * @param peak
+         *            where the largest number of entries being merged is kept
+         */
+        CountTask(String[] lines, int low, int high, Set<Character> breaks,
+                AtomicInteger peak) {
+            this.lines = lines;
+            this.low = low;
+            this.high = high;
+            this.breaks = breaks;
+            this.peak = peak;
+        }
+
+        @Override
+        protected WordCounter compute() {
+            WordCounter result;
+
+            if (this.high - this.low <= LINES_PER_CHUNK) {
+                // Small enough, count it into this worker's own counter
+                result = new WordCounter();
+                for (int i = this.low; i < this.high; i++) {
+                    countLine(this.lines[i], this.breaks, result);
+                }
+            } else {
+                // Split in half, count the right half in this thread
+                int mid = (this.low + this.high) >>> 1;
+                CountTask left = new CountTask(this.lines, this.low, mid,
+                        this.breaks, this.peak);
+                CountTask right = new CountTask(this.lines, mid, this.high,
+                        this.breaks, this.peak);
+                left.fork();
+                WordCounter rightCounts = right.compute();
+                WordCounter leftCounts = left.join();
+
+                // Both are still full here, mergeFrom empties the source
+                this.peak.accumulateAndGet(
+                        leftCounts.size() + rightCounts.size(), Math::max);
+
+                // Merge the smaller counter into the larger one
+                if (leftCounts.size() >= rightCounts.size()) {
+                    leftCounts.mergeFrom(rightCounts);
+                    result = leftCounts;
+                } else {
+                    rightCounts.mergeFrom(leftCounts);
+                    result = rightCounts;
+                }
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Same as {@code readInput}, but counts line-aligned chunks of the input
+     * on a {@code ForkJoinPool} and merges the partial counters.
+     *
+     * @param input
+     *            input file to be counted
+     * @param breaks
+     *            set of characters that signify breaks in text; must not be
+     *            modified while counting
+     * @param parallelism
+     *            number of worker threads
+     * @param metrics
+     *            where the time spent and the counts are recorded
+     * @return map of words and counts
+     * @requires input is open and parallelism > 0
+     * @ensures readInputParallel = [the same map readInput would return]
+     */
+    static Map<String, Integer> readInputParallel(
+            Set<Character> breaks, SimpleReader input, int parallelism,
+            TagCloudMetrics metrics) {
+        assert parallelism > 0 : "Violation of: parallelism > 0";
+
+        // Pull the lines in first, chunks are split along line boundaries
+        long start = metrics.start();
+        List<String> lines = new ArrayList<String>();
+        while (!input.atEOS()) {
+            lines.add(input.nextLine());
+        }
+        String[] lineArray = lines.toArray(new String[lines.size()]);
+        metrics.stop(TagCloudMetrics.Stage.READ, start);
+        metrics.addLines(lineArray.length);
+
+        start = metrics.start();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            AtomicInteger peak = new AtomicInteger();
+            WordCounter counter = pool.invoke(new CountTask(lineArray, 0,
+                    lineArray.length, breaks, peak));
+            Map<String, Integer> countMap = counter.toMap();
+            metrics.stop(TagCloudMetrics.Stage.COUNT, start);
+            metrics.counted(counter);
+            metrics.mapSize(peak.get());
+            return countMap;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Selects the {@code n} pairs of {@code countMap} that come first in
+     * {@code countOrder}, keeping at most {@code n} candidates at a time in a
+     * heap whose root is the worst candidate so far. This takes O(W log n)
+     * time and O(n) memory for W distinct words, instead of sorting all W.
+     *
+     * @param countMap
+     *            map of words and counts
+     * @param n
+     *            number of high count words
+     * @param countOrder
+     *            order the pairs are ranked by
+     * @return heap of the selected pairs, with the last of them in
+     *         {@code countOrder} at its root
+     * @requires n >= 0
+     * @ensures <pre>
+     * topCounts = [the min(n, |countMap|) first pairs of countMap in
+     *              countOrder]
+     * </pre>
+     */
+    static PriorityQueue<Pair<String, Integer>> topCounts(
+            Map<String, Integer> countMap, int n,
+            Comparator<Pair<String, Integer>> countOrder) {
+        assert n >= 0 : "Violation of: n >= 0";
+
+        // Reversing the order puts the worst candidate at the root
+        PriorityQueue<Pair<String, Integer>> top = new PriorityQueue<Pair<String, Integer>>(
+                Math.max(1, Math.min(n, countMap.size())),
+                Collections.reverseOrder(countOrder));
+
+        if (n > 0) {
+            for (Pair<String, Integer> countPair : countMap) {
+                if (top.size() < n) {
+                    top.add(countPair);
+                } else if (countOrder.compare(countPair, top.peek()) < 0) {
+                    // Beats the worst candidate, so replace it
+                    top.poll();
+                    top.add(countPair);
+                }
+            }
+        }
+
+        return top;
+    }
+
+    /**
+     * This takes in the list of words and associated counts and first selects
+     * the n words with the highest counts, finds the max and min, sorts the
+     * words alphabetically, and creates a tag for the words that it written to
+     * the output HTML file
      *
      * @param output
      *            HTML file to print the tags to
@@ -181,49 +673,40 @@ public final class TagCloudGenerator {
      *            number of high count words
      * @param countMap
      *            map of words and counts
-     * @clears countMap
+     * @param metrics
+     *            where the time spent is recorded
+     * @throws IOException
+     *             if writing to output fails
      * @ensures output content = output content * n words from countMap
      */
-    private static void sortByCountAndLetter(SimpleWriter output, int n,
-            Map<String, Integer> countMap) {
+    static void sortByCountAndLetter(TagCloudWriter output, int n,
+            Map<String, Integer> countMap, TagCloudMetrics metrics)
+            throws IOException {
+        long start = metrics.start();
 
-        // Create an integer comparator and sorting machine
+        // Select the n highest counts without sorting the rest
         Comparator<Pair<String, Integer>> countOrder = new CompareInteger();
-        SortingMachine<Map.Pair<String, Integer>> sortByCount = new SortingMachine2<Map.Pair<String, Integer>>(
+        PriorityQueue<Pair<String, Integer>> top = topCounts(countMap, n,
                 countOrder);
 
-        // Add all map values to the sorting machine
-        while (countMap.size() > 0) {
-            sortByCount.add(countMap.removeAny());
-        }
-
-        // Now sort it by changing to extraction mode
-        sortByCount.changeToExtractionMode();
-
         // Create a String comparator and sorting machine
         Comparator<Pair<String, Integer>> alphaOrder = new CompareString();
         SortingMachine<Map.Pair<String, Integer>> sortByLetter = new SortingMachine2<Map.Pair<String, Integer>>(
                 alphaOrder);
 
-        // Create a max value and minimum value
+        // Create a max value and minimum value; the root of the heap is the
+        // lowest count that made the cut
         int countMax = 0;
-        int countMin = Integer.MAX_VALUE;
-
-        //sortByCount.changeToInsertionMode();
-
-        if (sortByCount.size() > 0) {
-            Map.Pair<String, Integer> countPair = sortByCount.removeFirst();
-            countMax = countPair.value();
-            sortByCount.add(countPair);
+        int countMin = 0;
+        if (top.size() > 0) {
+            countMin = top.peek().value();
         }
 
-        for (int topCount = 0; topCount < n && sortByCount.size() > 0; topCount++) {
-            Map.Pair<String, Integer> countPair = sortByCount.removeFirst();
+        while (top.size() > 0) {
+            Map.Pair<String, Integer> countPair = top.poll();
 
-            // Find the high and low values
-            if (sortByCount.size() == 1 || topCount + 1 == n) {
-                countMin = countPair.value();
-            }
+            // Find the high value
+            countMax = Math.max(countMax, countPair.value());
 
             // Add to the alphabetical sorting machine
             sortByLetter.add(countPair);
@@ -231,6 +714,8 @@ public final class TagCloudGenerator {
 
         // Sort alphabetically
         sortByLetter.changeToExtractionMode();
+        metrics.stop(TagCloudMetrics.Stage.SORT, start);
+        start = metrics.start();
 
         // Loop through the sorted list and find the font size for each of the words
         while (sortByLetter.size() > 0) {
@@ -238,56 +723,22 @@ public final class TagCloudGenerator {
 
             // Get the count
             int count = countPair.value();
-            final int maxFontSize = 48;
-            final int minFontSize = 11;
-            int difference = maxFontSize - minFontSize;
+            int difference = TagCloudWriter.MAX_FONT_SIZE
+                    - TagCloudWriter.MIN_FONT_SIZE;
             int countDiff = countMax - countMin;
 
             // Set a min font size in case when the variable is initialized
             // Make sure that there won't be a divide by zero error.
-            int fontSize = 11;
+            int fontSize = TagCloudWriter.MIN_FONT_SIZE;
             if (countDiff != 0) {
                 fontSize = (((difference * (count - countMin)) / countDiff)
-                        + minFontSize);
+                        + TagCloudWriter.MIN_FONT_SIZE);
             }
 
-            // Convert to an integer so we can access the CSS class provided in the
-            // project assignment page
-            String size = Integer.toString(fontSize);
-
-            // Create the tag
-            String tag = "<span style=\"cursor:default\" class=\"f" + size
-                    + "\" title=\"count: " + countPair.value() + "\">" + countPair.key()
-                    + "</span>";
-            output.println(tag);
+            // Create the tag, its CSS class comes from the font size
+            output.tag(countPair.key(), count, fontSize);
         }
-    }
-
-    /**
-     * Outputs opening for the HTML file and create the header for the HTML
-     * file.
-     *
-     * @param output
-     *            output stream
-     * @param inputFile
-     *            name of the input file to read from
-     * @param n
-     *            number of words with highest counts
-     * @updates output
-     * @requires <pre>
-     *            output stream is open and inputFile is not null and n >= 0
-     * </pre>
-     *
-     */
-    private static void createOpeningHTML(SimpleWriter output, String inputFile, int n) {
-
-        // Output the name of the file and with n and the inputFile
-        output.println(
-                "<html><head><title>Top " + n + " words in " + inputFile + "</title>");
-        output.println(
-                "<link href=\"doc/tagcloud.css\" rel=\"stylesheet\" type=\"text/css\">");
-        output.println("</head><body><h3>Top " + n + " words in " + inputFile + "</h3>");
-        output.println("<hr><div class = \"cdiv\"><p class = \"cbox\">");
+        metrics.stop(TagCloudMetrics.Stage.WRITE, start);
     }
 
     /**
@@ -330,25 +781,327 @@ public final class TagCloudGenerator {
     }
 
     /**
-     * Closes out the tags created in the HTML file
+     * Writes the tag cloud of the {@code n} most frequent words in
+     * {@code countMap} to {@code outputFile}.
      *
-     * @param output
-     *            the simple writer stream for the output html file
+     * @param outputFile
+     *            name of the output file (.html)
+     * @param inputFile
+     *            name of the input file, shown in the header
+     * @param n
+     *            number of words with highest counts
+     * @param countMap
+     *            map of words and counts
+     * @param metrics
+     *            where the time spent is recorded
+     * @throws IOException
+     *             if the output file cannot be written
+     * @requires 0 <= n <= |countMap|
      */
-    private static void createClosingHTML(SimpleWriter output) {
+    private static void writeTagCloud(String outputFile, String inputFile,
+            int n, Map<String, Integer> countMap, TagCloudMetrics metrics)
+            throws IOException {
+
+        // Open up an output stream for the HTML file
+        long start = metrics.start();
+        TagCloudWriter writeHTML = new TagCloudWriter(outputFile);
+        try {
+
+            // makes header with number of words
+            writeHTML.openDocument(inputFile, n);
+            metrics.stop(TagCloudMetrics.Stage.WRITE, start);
+
+            // Create the body of the HTML file
+            sortByCountAndLetter(writeHTML, n, countMap, metrics);
+
+            // Creates the closing to finish out the HTML file
+            start = metrics.start();
+            writeHTML.closeDocument();
+            metrics.stop(TagCloudMetrics.Stage.WRITE, start);
+        } finally {
+            // Timed on its own, so a failed sort is not booked as writing
+            start = metrics.start();
+            writeHTML.close();
+            metrics.stop(TagCloudMetrics.Stage.WRITE, start);
+        }
+    }
 
-        // Outputs the closing tags for the HTML file
-        output.println("</p></div></body></html>");
+    /**
+     * Returns metrics to collect, or {@code TagCloudMetrics.DISABLED} if
+     * {@code --metrics} was not given on the command line.
+     *
+     * @param args
+     *            the command line arguments
+     * @return the metrics for this run
+     */
+    private static TagCloudMetrics metrics(String[] args) {
+        TagCloudMetrics metrics = TagCloudMetrics.DISABLED;
+        for (String arg : args) {
+            if (arg.equals("--metrics") || arg.startsWith("--metrics=")) {
+                metrics = new TagCloudMetrics();
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Emits the metrics of a run as one JSON line: appended to FILE if
+     * {@code --metrics=FILE} was given, printed to {@code out} otherwise.
+     * Does nothing if the metrics are disabled.
+     *
+     * @param args
+     *            the command line arguments
+     * @param metrics
+     *            the metrics of the run
+     * @param inputFile
+     *            name of the input file
+     * @param mode
+     *            how the input was counted
+     * @param out
+     *            console output
+     */
+    private static void reportMetrics(String[] args, TagCloudMetrics metrics,
+            String inputFile, String mode, SimpleWriter out) {
+        if (metrics.isEnabled()) {
+            try {
+                metrics.setBytes(Files.size(Paths.get(inputFile)));
+            } catch (IOException e) {
+                // Leave the byte count at 0, the rest is still useful
+                metrics.setBytes(0);
+            }
+            String json = metrics.toJson(inputFile, mode);
+
+            String metricsFile = null;
+            for (String arg : args) {
+                if (arg.startsWith("--metrics=")) {
+                    metricsFile = arg.substring("--metrics=".length());
+                }
+            }
+            if (metricsFile == null) {
+                out.println(json);
+            } else {
+                try {
+                    Files.write(Paths.get(metricsFile),
+                            (json + System.lineSeparator())
+                                    .getBytes(StandardCharsets.UTF_8),
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.APPEND);
+                } catch (IOException e) {
+                    out.println("Could not write metrics to " + metricsFile
+                            + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Generates a tag cloud for every .txt file in a directory at once,
+     * without any prompts. The files are counted and written concurrently on
+     * a fixed pool of worker threads, all sharing one separator table, and a
+     * throughput summary is printed at the end.
+     *
+     * @param inputDir
+     *            directory holding the .txt files
+     * @param n
+     *            number of words with highest counts in every tag cloud
+     * @param outputDir
+     *            directory the .html files are written to; created if needed
+     * @param threads
+     *            number of worker threads
+     * @param out
+     *            where progress and the summary go
+     * @requires n >= 0 and threads > 0 and out.is_open
+     */
+    private static void runBatch(Path inputDir, final int n,
+            final Path outputDir, int threads, SimpleWriter out) {
+        assert n >= 0 : "Violation of: n >= 0";
+        assert threads > 0 : "Violation of: threads > 0";
+
+        // Find the corpora, in name order so the report is stable
+        List<Path> inputs = new ArrayList<Path>();
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(inputDir,
+                "*.txt")) {
+            for (Path input : dir) {
+                inputs.add(input);
+            }
+            Files.createDirectories(outputDir);
+        } catch (IOException e) {
+            out.println("Could not read " + inputDir + ": " + e.getMessage());
+            return;
+        }
+        Collections.sort(inputs);
+
+        // One separator table for the whole batch, it is only ever read
+        final boolean[] separators = MappedTokenizer
+                .separatorTable(generateBreaks(SEPARATORS));
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Long>> results = new ArrayList<Future<Long>>();
+        for (final Path input : inputs) {
+            results.add(pool.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws IOException {
+                    String name = input.getFileName().toString();
+                    String outputFile = outputDir.resolve(
+                            name.substring(0, name.length() - ".txt".length())
+                                    + ".html")
+                            .toString();
+
+                    Map<String, Integer> counts = readInputMapped(
+                            input.toString(), separators,
+                            TagCloudMetrics.DISABLED);
+                    writeTagCloud(outputFile, input.toString(),
+                            Math.min(n, counts.size()), counts,
+                            TagCloudMetrics.DISABLED);
+
+                    return Files.size(input);
+                }
+            }));
+        }
+        pool.shutdown();
+
+        // Wait for every file, reporting the ones that failed
+        int files = 0;
+        long bytes = 0;
+        for (int i = 0; i < inputs.size(); i++) {
+            try {
+                bytes += results.get(i).get();
+                files++;
+            } catch (ExecutionException e) {
+                out.println("Could not process " + inputs.get(i) + ": "
+                        + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                out.println("Interrupted while processing " + inputs.get(i));
+                pool.shutdownNow();
+                return;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / NANOS_PER_SECOND;
+        double megabytes = bytes / BYTES_PER_MEGABYTE;
+
+        out.println(String.format(
+                "%d files, %.1f MB in %.3f s: %.1f files/s, %.1f MB/s",
+                files, megabytes, seconds, files / seconds,
+                megabytes / seconds));
+    }
+
+    /**
+     * Returns the number of threads asked for with {@code flag} on the
+     * command line. The bare flag means one thread per available processor
+     * and {@code flag=N} means N threads.
+     *
+     * @param args
+     *            the command line arguments
+     * @param flag
+     *            the flag to look for
+     * @param absent
+     *            the result when {@code flag} is not given
+     * @return number of threads
+     * @throws NumberFormatException
+     *             if N is not a number
+     */
+    private static int threadCount(String[] args, String flag, int absent) {
+        int threads = absent;
+        for (String arg : args) {
+            if (arg.equals(flag)) {
+                threads = Runtime.getRuntime().availableProcessors();
+            } else if (arg.startsWith(flag + "=")) {
+                threads = Integer.parseInt(arg.substring(flag.length() + 1));
+            }
+        }
+        return threads;
+    }
+
+    /**
+     * Reports whether {@code flag} was given on the command line.
+     *
+     * @param args
+     *            the command line arguments
+     * @param flag
+     *            the flag to look for
+     * @return true iff {@code flag} is one of {@code args}
+     */
+    private static boolean hasFlag(String[] args, String flag) {
+        boolean found = false;
+        for (String arg : args) {
+            found = found || arg.equals(flag);
+        }
+        return found;
     }
 
     /**
      * Main method.
      *
      * @param args
-     *            the command line arguments; unused here
+     *            the command line arguments; {@code --parallel[=N]} counts
+     *            the input on N threads, {@code --mmap} counts it through a
+     *            memory mapping of the file,
+     *            {@code --batch DIR N OUTDIR [--threads[=K]]} generates the
+     *            tag clouds of every .txt file in DIR without prompting, and
+     *            {@code --update INPUT OUTPUT N [SNAPSHOT]} regenerates the tag
+     *            cloud of an append-only INPUT counting only what was appended
+     *            since the last update (SNAPSHOT defaults to INPUT.counts);
+     *            {@code --metrics[=FILE]} reports stage times and counts as a
+     *            JSON line, on the console or appended to FILE
      */
     public static void main(String[] args) {
 
+        // Batch mode needs no prompts
+        if (args.length > 0 && args[0].equals("--batch")) {
+            SimpleWriter out = new SimpleWriter1L();
+
+            // N and K must be numbers, N >= 0 and K > 0
+            int n = -1;
+            int threads = 0;
+            if (args.length >= BATCH_ARGS) {
+                try {
+                    n = Integer.parseInt(args[2]);
+                    threads = threadCount(args, "--threads",
+                            Runtime.getRuntime().availableProcessors());
+                } catch (NumberFormatException e) {
+                    n = -1;
+                }
+            }
+            if (n < 0 || threads <= 0) {
+                out.println("Usage: TagCloudGenerator --batch DIR N OUTDIR"
+                        + " [--threads[=K]]");
+            } else {
+                runBatch(Paths.get(args[1]), n, Paths.get(args[3]), threads,
+                        out);
+            }
+            out.close();
+            return;
+        }
+
+        // So does updating the tag cloud of a growing file
+        if (args.length > 0 && args[0].equals("--update")) {
+            SimpleWriter out = new SimpleWriter1L();
+            if (args.length < UPDATE_ARGS) {
+                out.println("Usage: TagCloudGenerator --update INPUT OUTPUT N"
+                        + " [SNAPSHOT]");
+            } else {
+                String snapshotFile = args[1] + ".counts";
+                if (args.length > UPDATE_ARGS
+                        && !args[UPDATE_ARGS].startsWith("--")) {
+                    snapshotFile = args[UPDATE_ARGS];
+                }
+                TagCloudMetrics metrics = metrics(args);
+                try {
+                    runIncremental(Paths.get(args[1]), args[2],
+                            Integer.parseInt(args[3]), Paths.get(snapshotFile),
+                            out, metrics);
+                    reportMetrics(args, metrics, args[1], "update", out);
+                } catch (IOException e) {
+                    out.println("Could not update " + args[2] + ": "
+                            + e.getMessage());
+                }
+            }
+            out.close();
+            return;
+        }
+
         // Open the input stream and output stream
         SimpleReader in = new SimpleReader1L();
         SimpleWriter out = new SimpleWriter1L();
@@ -357,40 +1110,59 @@ public final class TagCloudGenerator {
         out.print("Enter the name of the input file (.txt): ");
         String inputFile = in.nextLine();
 
-        // Create the input stream from the inputFile name
-        SimpleReader input = new SimpleReader1L(inputFile);
-
         // Get the breaks
-        Set<Character> breaks = new Set1L<Character>();
-        breaks = generateBreaks(SEPARATORS);
+        Set<Character> breaks = generateBreaks(SEPARATORS);
 
         // Call readInput to get the count of each word
-        Map<String, Integer> wordsWithCounts = readInput(breaks, input);
+        TagCloudMetrics metrics = metrics(args);
+        String mode = "sequential";
+        Map<String, Integer> wordsWithCounts;
+        if (hasFlag(args, "--mmap")) {
+            mode = "mmap";
+            try {
+                wordsWithCounts = readInputMapped(inputFile,
+                        MappedTokenizer.separatorTable(breaks), metrics);
+            } catch (IOException e) {
+                out.println("Could not read " + inputFile + ": "
+                        + e.getMessage());
+                in.close();
+                out.close();
+                return;
+            }
+        } else {
+            // Create the input stream from the inputFile name
+            SimpleReader input = new SimpleReader1L(inputFile);
+
+            int threads = threadCount(args, "--parallel", 0);
+            if (threads > 0) {
+                mode = "parallel";
+                wordsWithCounts = readInputParallel(breaks, input, threads,
+                        metrics);
+            } else {
+                wordsWithCounts = readInput(breaks, input, metrics);
+            }
+            input.close();
+        }
 
-        // get name of  output file and create SimpleWriter
+        // get name of  output file
         out.print("Enter the name of an output file (.html): ");
         String outputFile = in.nextLine();
 
-        // Open up an output stream for the HTML file
-        SimpleWriter writeHTML = new SimpleWriter1L(outputFile);
-
         // Asking for the number of words
         int numWords = getNum(in, out, wordsWithCounts.size());
 
-        // makes header with number of words
-        createOpeningHTML(writeHTML, inputFile, numWords);
-
-        // Create the body of the HTML file
-        sortByCountAndLetter(writeHTML, numWords, wordsWithCounts);
-
-        // Creates the closing to finish out the HTML file
-        createClosingHTML(writeHTML);
+        // Write the tag cloud
+        try {
+            writeTagCloud(outputFile, inputFile, numWords, wordsWithCounts,
+                    metrics);
+        } catch (IOException e) {
+            out.println("Could not write " + outputFile + ": " + e.getMessage());
+        }
+        reportMetrics(args, metrics, inputFile, mode, out);
 
         //close all I/O streams
         in.close();
         out.close();
-        input.close();
-        writeHTML.close();
     }
 
 }
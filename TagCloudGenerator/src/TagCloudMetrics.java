@@ -0,0 +1,242 @@
+import java.util.Locale;
+
+/**
+ * Stage timers and counters for one {@code TagCloudGenerator} run, reported
+ * as a single JSON line at the end of it.
+ *
+ * <p>
+ * The {@code DISABLED} instance ignores everything and never reads the clock,
+ * so passing it costs one well-predicted branch per call. The stages are
+ * timed around whole lines or whole calls, never per word; tokenizing and
+ * counting are interleaved word by word, so they are one stage.
+ *
+ * @author Charan Nanduri and Nathan Damian
+ */
+public final class TagCloudMetrics {
+
+    /**
+     * The stages of a run.
+     */
+    enum Stage {
+        /**
+         * Reading lines of the input, before they are counted in parallel.
+         */
+        READ,
+        /**
+         * Splitting the input into words and counting them (and reading it,
+         * when it is memory-mapped or read and counted a line at a time).
+         */
+        COUNT,
+        /**
+         * Selecting the top words and sorting them alphabetically.
+         */
+        SORT,
+        /**
+         * Writing the HTML page.
+         */
+        WRITE
+    }
+
+    /**
+     * Metrics that are not collected.
+     */
+    static final TagCloudMetrics DISABLED = new TagCloudMetrics(false);
+
+    /**
+     * Whether anything is collected.
+     */
+    private final boolean enabled;
+
+    /**
+     * Nanoseconds spent in each stage, indexed by ordinal.
+     */
+    private final long[] stageNanos = new long[Stage.values().length];
+
+    /**
+     * Number of lines read.
+     */
+    private long lines;
+
+    /**
+     * Number of words counted, including repeats.
+     */
+    private long tokens;
+
+    /**
+     * Number of distinct words.
+     */
+    private long distinctWords;
+
+    /**
+     * Size of the input in bytes.
+     */
+    private long bytes;
+
+    /**
+     * Largest number of entries held in word counters at once: the final
+     * counter, or two partial counters being merged if they held more.
+     */
+    private long peakMapSize;
+
+    /**
+     * Constructor.
+     *
+     * @param enabled
+     *            whether anything is collected
+     */
+    private TagCloudMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * No-argument constructor, for metrics that are collected.
+     */
+    public TagCloudMetrics() {
+        this(true);
+    }
+
+    /**
+     * Starts timing a stage.
+     *
+     * @return the start time, to be passed to {@code stop}
+     */
+    long start() {
+        long now = 0;
+        if (this.enabled) {
+            now = System.nanoTime();
+        }
+        return now;
+    }
+
+    /**
+     * Stops timing a stage, adding the time since {@code start} to it.
+     *
+     * @param stage
+     *            the stage that was timed
+     * @param start
+     *            the value {@code start()} returned
+     */
+    void stop(Stage stage, long start) {
+        if (this.enabled) {
+            this.stageNanos[stage.ordinal()] += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Adds to the number of lines read.
+     *
+     * @param count
+     *            number of lines
+     */
+    void addLines(long count) {
+        if (this.enabled) {
+            this.lines += count;
+        }
+    }
+
+    /**
+     * Records the contents of a finished word counter: the words it counted
+     * and how many of them are distinct.
+     *
+     * @param counter
+     *            the counter
+     */
+    void counted(WordCounter counter) {
+        if (this.enabled) {
+            this.tokens += counter.total();
+            this.distinctWords = counter.size();
+            this.mapSize(counter.size());
+        }
+    }
+
+    /**
+     * Records a number of entries held in word counters at once.
+     *
+     * @param size
+     *            number of entries
+     */
+    void mapSize(long size) {
+        if (this.enabled) {
+            this.peakMapSize = Math.max(this.peakMapSize, size);
+        }
+    }
+
+    /**
+     * Sets the size of the input.
+     *
+     * @param size
+     *            size of the input in bytes
+     */
+    void setBytes(long size) {
+        if (this.enabled) {
+            this.bytes = size;
+        }
+    }
+
+    /**
+     * Reports whether anything is collected.
+     *
+     * @return true iff this is not {@code DISABLED}
+     */
+    boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Returns everything collected as one line of JSON.
+     *
+     * @param inputFile
+     *            name of the input file, included in the line
+     * @param mode
+     *            how the input was counted, included in the line
+     * @return the JSON line, without a line separator
+     */
+    String toJson(String inputFile, String mode) {
+        StringBuilder json = new StringBuilder("{\"input\":");
+        appendString(json, inputFile);
+        json.append(",\"mode\":");
+        appendString(json, mode);
+
+        long total = 0;
+        for (Stage stage : Stage.values()) {
+            long nanos = this.stageNanos[stage.ordinal()];
+            total += nanos;
+            json.append(",\"").append(stage.name().toLowerCase(Locale.ROOT))
+                    .append("Nanos\":").append(nanos);
+        }
+        json.append(",\"totalNanos\":").append(total);
+
+        json.append(",\"lines\":").append(this.lines);
+        json.append(",\"tokens\":").append(this.tokens);
+        json.append(",\"distinctWords\":").append(this.distinctWords);
+        json.append(",\"bytes\":").append(this.bytes);
+        json.append(",\"peakMapSize\":").append(this.peakMapSize);
+        json.append('}');
+
+        return json.toString();
+    }
+
+    /**
+     * Appends {@code s} to {@code json} as a JSON string literal.
+     *
+     * @param json
+     *            the JSON being built
+     * @param s
+     *            the string
+     */
+    private static void appendString(StringBuilder json, String s) {
+        json.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < ' ') {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+}
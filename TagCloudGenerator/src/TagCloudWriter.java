@@ -0,0 +1,182 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Writes a tag cloud HTML page. Everything is appended to one reusable
+ * {@code StringBuilder} and handed to the underlying {@code Writer} in large
+ * blocks, and the markup in front of every word is built once per font size
+ * instead of once per tag.
+ *
+ * @author Charan Nanduri and Nathan Damian
+ */
+public final class TagCloudWriter implements Closeable {
+
+    /**
+     * Smallest font size, i.e. CSS class f11.
+     */
+    static final int MIN_FONT_SIZE = 11;
+
+    /**
+     * Largest font size, i.e. CSS class f48.
+     */
+    static final int MAX_FONT_SIZE = 48;
+
+    /**
+     * Number of buffered characters that triggers a write to {@code out}.
+     */
+    private static final int FLUSH_THRESHOLD = 1 << 16;
+
+    /**
+     * Line separator, the same one {@code SimpleWriter.println} uses.
+     */
+    private static final String NEWLINE = System.lineSeparator();
+
+    /**
+     * Markup in front of the count of a tag, indexed by font size minus
+     * {@code MIN_FONT_SIZE}.
+     */
+    private static final String[] TAG_PREFIXES = new String[MAX_FONT_SIZE
+            - MIN_FONT_SIZE + 1];
+
+    static {
+        for (int size = MIN_FONT_SIZE; size <= MAX_FONT_SIZE; size++) {
+            TAG_PREFIXES[size - MIN_FONT_SIZE] = "<span style=\"cursor:default\" class=\"f"
+                    + size + "\" title=\"count: ";
+        }
+    }
+
+    /**
+     * Where the page goes.
+     */
+    private final Writer out;
+
+    /**
+     * Text not yet handed to {@code out}.
+     */
+    private final StringBuilder buffer;
+
+    /**
+     * Constructor writing to the file {@code outputFile} in UTF-8.
+     *
+     * @param outputFile
+     *            name of the output file (.html)
+     * @throws IOException
+     *             if the file cannot be created
+     */
+    public TagCloudWriter(String outputFile) throws IOException {
+        this(Files.newBufferedWriter(Paths.get(outputFile),
+                StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Constructor writing to {@code out}.
+     *
+     * @param out
+     *            where the page goes; closed by {@code close}
+     */
+    public TagCloudWriter(Writer out) {
+        assert out != null : "Violation of: out is not null";
+
+        this.out = out;
+        this.buffer = new StringBuilder(FLUSH_THRESHOLD + FLUSH_THRESHOLD / 4);
+    }
+
+    /**
+     * Hands the buffered text to {@code out} once there is enough of it.
+     *
+     * @throws IOException
+     *             if writing fails
+     */
+    private void flushIfFull() throws IOException {
+        if (this.buffer.length() >= FLUSH_THRESHOLD) {
+            this.out.append(this.buffer);
+            this.buffer.setLength(0);
+        }
+    }
+
+    /**
+     * Writes the opening of the page, with the header naming the input file.
+     *
+     * @param inputFile
+     *            name of the input file the words came from
+     * @param n
+     *            number of words with highest counts
+     * @throws IOException
+     *             if writing fails
+     * @requires inputFile is not null and n >= 0
+     */
+    public void openDocument(String inputFile, int n) throws IOException {
+        assert inputFile != null : "Violation of: inputFile is not null";
+        assert n >= 0 : "Violation of: n >= 0";
+
+        this.buffer.append("<html><head><title>Top ").append(n)
+                .append(" words in ").append(inputFile).append("</title>")
+                .append(NEWLINE);
+        this.buffer.append(
+                "<link href=\"doc/tagcloud.css\" rel=\"stylesheet\" type=\"text/css\">")
+                .append(NEWLINE);
+        this.buffer.append("</head><body><h3>Top ").append(n)
+                .append(" words in ").append(inputFile).append("</h3>")
+                .append(NEWLINE);
+        this.buffer.append("<hr><div class = \"cdiv\"><p class = \"cbox\">")
+                .append(NEWLINE);
+        this.flushIfFull();
+    }
+
+    /**
+     * Writes the tag for one word.
+     *
+     * @param word
+     *            the word
+     * @param count
+     *            the number of times the word occurs
+     * @param fontSize
+     *            font size the word is shown in
+     * @throws IOException
+     *             if writing fails
+     * @requires MIN_FONT_SIZE <= fontSize <= MAX_FONT_SIZE
+     */
+    public void tag(String word, int count, int fontSize) throws IOException {
+        assert word != null : "Violation of: word is not null";
+        assert MIN_FONT_SIZE <= fontSize : ""
+                + "Violation of: MIN_FONT_SIZE <= fontSize";
+        assert fontSize <= MAX_FONT_SIZE : ""
+                + "Violation of: fontSize <= MAX_FONT_SIZE";
+
+        this.buffer.append(TAG_PREFIXES[fontSize - MIN_FONT_SIZE]).append(count)
+                .append("\">").append(word).append("</span>").append(NEWLINE);
+        this.flushIfFull();
+    }
+
+    /**
+     * Writes the closing tags of the page.
+     *
+     * @throws IOException
+     *             if writing fails
+     */
+    public void closeDocument() throws IOException {
+        this.buffer.append("</p></div></body></html>").append(NEWLINE);
+        this.flushIfFull();
+    }
+
+    /**
+     * Writes out whatever is still buffered and closes the output.
+     *
+     * @throws IOException
+     *             if writing fails
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            this.out.append(this.buffer);
+            this.buffer.setLength(0);
+        } finally {
+            this.out.close();
+        }
+    }
+
+}
@@ -0,0 +1,324 @@
+import java.util.function.ObjIntConsumer;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Counts occurrences of words in an open-addressing hash table made of
+ * parallel arrays: the words, their cached hash codes and their counts as
+ * plain {@code int}s. Counting a word is a single probe sequence with no
+ * boxing, instead of the hasKey, value, remove and add of a
+ * {@code Map<String, Integer>}.
+ *
+ * @convention <pre>
+ * |$this.words| = |$this.hashes| = |$this.counts|  and
+ * |$this.words| is a power of 2  and
+ * $this.size = [number of non-null entries in $this.words]  and
+ * $this.total = [sum of the entries of $this.counts]  and
+ * $this.size <= |$this.words| * MAX_LOAD_PERCENT / 100  and
+ * for all i: integer
+ *     where (0 <= i  and  i < |$this.words|  and  $this.words[i] /= null)
+ *   ($this.hashes[i] = [spread hash code of $this.words[i]]  and
+ *    $this.counts[i] > 0  and
+ *    [no null entry lies on the probe sequence from the home slot of
+ *     $this.words[i] to i])
+ * </pre>
+ * @correspondence <pre>
+ * this = {(w, c): (w = $this.words[i] and c = $this.counts[i]) for some i
+ *         where $this.words[i] /= null}
+ * </pre>
+ *
+ * @author Charan Nanduri and Nathan Damian
+ */
+public final class WordCounter {
+
+    /**
+     * Default number of slots.
+     */
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Largest percentage of slots in use before the table doubles.
+     */
+    private static final int MAX_LOAD_PERCENT = 60;
+
+    /**
+     * Words, or null for an empty slot.
+     */
+    private String[] words;
+
+    /**
+     * Spread hash code of the word in the same slot.
+     */
+    private int[] hashes;
+
+    /**
+     * Count of the word in the same slot.
+     */
+    private int[] counts;
+
+    /**
+     * Number of distinct words.
+     */
+    private int size;
+
+    /**
+     * Sum of all counts.
+     */
+    private long total;
+
+    /**
+     * Spreads the high bits of a hash code into the low bits used to pick a
+     * slot.
+     *
+     * @param word
+     *            the word to hash
+     * @return the spread hash code of {@code word}
+     */
+    private static int spread(String word) {
+        int h = word.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the slot holding {@code word}, or the empty slot where it would
+     * go.
+     *
+     * @param word
+     *            the word to find
+     * @param hash
+     *            the spread hash code of {@code word}
+     * @return index of the slot
+     */
+    private int find(String word, int hash) {
+        int mask = this.words.length - 1;
+        int i = hash & mask;
+        while (this.words[i] != null && !(this.hashes[i] == hash
+                && this.words[i].equals(word))) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Doubles the number of slots and reinserts every word, using the cached
+     * hash codes.
+     */
+    private void grow() {
+        String[] oldWords = this.words;
+        int[] oldHashes = this.hashes;
+        int[] oldCounts = this.counts;
+
+        int capacity = 2 * oldWords.length;
+        this.words = new String[capacity];
+        this.hashes = new int[capacity];
+        this.counts = new int[capacity];
+
+        int mask = capacity - 1;
+        for (int j = 0; j < oldWords.length; j++) {
+            if (oldWords[j] != null) {
+                int i = oldHashes[j] & mask;
+                while (this.words[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                this.words[i] = oldWords[j];
+                this.hashes[i] = oldHashes[j];
+                this.counts[i] = oldCounts[j];
+            }
+        }
+    }
+
+    /**
+     * No-argument constructor.
+     */
+    public WordCounter() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor sized for about {@code expectedWords} distinct words.
+     *
+     * @param expectedWords
+     *            expected number of distinct words
+     * @requires expectedWords >= 0
+     * @ensures this = {}
+     */
+    public WordCounter(int expectedWords) {
+        assert expectedWords >= 0 : "Violation of: expectedWords >= 0";
+
+        int capacity = 2;
+        while ((long) capacity * MAX_LOAD_PERCENT / 100 < expectedWords) {
+            capacity *= 2;
+        }
+        this.words = new String[capacity];
+        this.hashes = new int[capacity];
+        this.counts = new int[capacity];
+        this.size = 0;
+    }
+
+    /**
+     * Adds {@code amount} to the count of {@code word}.
+     *
+     * @param word
+     *            the word that was found
+     * @param amount
+     *            how many times it was found
+     * @updates this
+     * @requires amount > 0
+     * @ensures <pre>
+     * if word is in DOMAIN(#this) then
+     *   this = #this with the count of word increased by amount
+     * else
+     *   this = #this union {(word, amount)}
+     * </pre>
+     */
+    public void increment(String word, int amount) {
+        assert word != null : "Violation of: word is not null";
+        assert amount > 0 : "Violation of: amount > 0";
+
+        this.increment(word, spread(word), amount);
+    }
+
+    /**
+     * Adds {@code amount} to the count of {@code word}, whose spread hash
+     * code is already known.
+     *
+     * @param word
+     *            the word that was found
+     * @param hash
+     *            the spread hash code of {@code word}
+     * @param amount
+     *            how many times it was found
+     * @updates this
+     */
+    private void increment(String word, int hash, int amount) {
+        int i = this.find(word, hash);
+        this.total += amount;
+
+        if (this.words[i] != null) {
+            this.counts[i] += amount;
+        } else {
+            this.words[i] = word;
+            this.hashes[i] = hash;
+            this.counts[i] = amount;
+            this.size++;
+            if ((long) this.size * 100 > (long) this.words.length
+                    * MAX_LOAD_PERCENT) {
+                this.grow();
+            }
+        }
+    }
+
+    /**
+     * Adds one to the count of {@code word}.
+     *
+     * @param word
+     *            the word that was found
+     * @updates this
+     * @ensures <pre>
+     * if word is in DOMAIN(#this) then
+     *   this = #this with the count of word increased by 1
+     * else
+     *   this = #this union {(word, 1)}
+     * </pre>
+     */
+    public void increment(String word) {
+        this.increment(word, 1);
+    }
+
+    /**
+     * Returns the count of {@code word}.
+     *
+     * @param word
+     *            the word to look up
+     * @return the number of times {@code word} was counted, 0 if never
+     */
+    public int count(String word) {
+        assert word != null : "Violation of: word is not null";
+
+        int i = this.find(word, spread(word));
+        int result = 0;
+        if (this.words[i] != null) {
+            result = this.counts[i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of distinct words.
+     *
+     * @return |DOMAIN(this)|
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of words counted, including repeats.
+     *
+     * @return sum of all counts in this
+     */
+    public long total() {
+        return this.total;
+    }
+
+    /**
+     * Adds every count of {@code source} to this, then empties it.
+     *
+     * @param source
+     *            the counter to merge in
+     * @updates this
+     * @clears source
+     * @ensures this = #this merged with #source by summing counts
+     */
+    public void mergeFrom(WordCounter source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+
+        for (int j = 0; j < source.words.length; j++) {
+            if (source.words[j] != null) {
+                this.increment(source.words[j], source.hashes[j],
+                        source.counts[j]);
+            }
+        }
+        source.words = new String[2];
+        source.hashes = new int[2];
+        source.counts = new int[2];
+        source.size = 0;
+        source.total = 0;
+    }
+
+    /**
+     * Hands every word and its count to {@code action}, in no particular
+     * order.
+     *
+     * @param action
+     *            what to do with each word and count
+     */
+    public void forEach(ObjIntConsumer<String> action) {
+        assert action != null : "Violation of: action is not null";
+
+        for (int i = 0; i < this.words.length; i++) {
+            if (this.words[i] != null) {
+                action.accept(this.words[i], this.counts[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the counts as a {@code Map}, for the sorting and output code.
+     *
+     * @return map of words and counts
+     * @ensures toMap = this
+     */
+    public Map<String, Integer> toMap() {
+        Map<String, Integer> countMap = new Map1L<String, Integer>();
+        for (int i = 0; i < this.words.length; i++) {
+            if (this.words[i] != null) {
+                countMap.add(this.words[i], this.counts[i]);
+            }
+        }
+        return countMap;
+    }
+
+}
@@ -0,0 +1,245 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * JUnit test fixture for {@code CountSnapshot}, and for updating a tag cloud
+ * incrementally with it.
+ */
+public final class CountSnapshotTest {
+
+    /**
+     * Position of the number of words in a snapshot file.
+     */
+    private static final int WORDS_AT = 2 * Integer.BYTES + Long.BYTES;
+
+    /**
+     * Position of the length of the first word in a snapshot file.
+     */
+    private static final int FIRST_LENGTH_AT = WORDS_AT + Integer.BYTES;
+
+    /**
+     * Number of words in the tag clouds of the incremental tests.
+     */
+    private static final int TOP_COUNT = 100;
+
+    /**
+     * Returns a new temporary file name, with no file there yet.
+     *
+     * @param suffix
+     *            the end of the name
+     * @return the file name
+     * @throws IOException
+     *             if no name can be made
+     */
+    private static Path tempFile(String suffix) throws IOException {
+        Path file = Files.createTempFile("snapshot", suffix);
+        Files.delete(file);
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Saves a snapshot of a few words and returns the bytes of its file.
+     *
+     * @return the bytes of the file
+     * @throws IOException
+     *             if the file cannot be written or read
+     */
+    private static byte[] snapshotBytes() throws IOException {
+        CountSnapshot snapshot = new CountSnapshot();
+        snapshot.counter().increment("alpha", 3);
+        snapshot.counter().increment("beta");
+        snapshot.setOffset(42);
+        Path file = tempFile(".counts");
+        snapshot.save(file);
+        return Files.readAllBytes(file);
+    }
+
+    /**
+     * Reports whether loading a snapshot file holding {@code bytes} fails
+     * with an {@code IOException}.
+     *
+     * @param bytes
+     *            the contents of the file
+     * @return true iff {@code load} refuses the file
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private static boolean refused(byte[] bytes) throws IOException {
+        Path file = tempFile(".counts");
+        Files.write(file, bytes);
+        boolean refused = false;
+        try {
+            CountSnapshot.load(file);
+        } catch (IOException e) {
+            refused = true;
+        }
+        return refused;
+    }
+
+    /**
+     * Returns {@code bytes} with the int at {@code position} replaced.
+     *
+     * @param bytes
+     *            the original bytes; not changed
+     * @param position
+     *            where the int is
+     * @param value
+     *            the new int
+     * @return the changed copy
+     */
+    private static byte[] withInt(byte[] bytes, int position, int value) {
+        byte[] copy = bytes.clone();
+        ByteBuffer.wrap(copy).putInt(position, value);
+        return copy;
+    }
+
+    /**
+     * Brings the tag cloud of {@code input} up to date with the snapshot in
+     * {@code snapshotFile}, and returns the page.
+     *
+     * @param input
+     *            the input file
+     * @param snapshotFile
+     *            the snapshot file
+     * @return the HTML page
+     * @throws IOException
+     *             if a file cannot be read or written
+     */
+    private static String update(Path input, Path snapshotFile)
+            throws IOException {
+        Path outputFile = tempFile(".html");
+        Path messages = tempFile(".log");
+        SimpleWriter out = new SimpleWriter1L(messages.toString());
+        TagCloudGenerator.runIncremental(input, outputFile.toString(),
+                TOP_COUNT, snapshotFile, out, TagCloudMetrics.DISABLED);
+        out.close();
+        return new String(Files.readAllBytes(outputFile),
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Test a missing file loads as an empty snapshot.
+     *
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    @Test
+    public void testLoadMissing() throws IOException {
+        CountSnapshot snapshot = CountSnapshot.load(tempFile(".counts"));
+        assertEquals(0, snapshot.offset());
+        assertEquals(0, snapshot.counter().size());
+    }
+
+    /**
+     * Test saving and loading keeps the offset and every count, including
+     * words with non-ASCII characters.
+     *
+     * @throws IOException
+     *             if the file cannot be written or read
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        final int count = 2000;
+        CountSnapshot snapshot = new CountSnapshot();
+        for (int i = 0; i < count; i++) {
+            snapshot.counter().increment("word" + i, i % 5 + 1);
+        }
+        snapshot.counter().increment("na\u00efve", 7);
+        snapshot.counter().increment("\u00fcber");
+        snapshot.setOffset(123456789012L);
+        Path file = tempFile(".counts");
+        snapshot.save(file);
+
+        CountSnapshot loaded = CountSnapshot.load(file);
+        assertEquals(snapshot.offset(), loaded.offset());
+        assertEquals(snapshot.counter().toMap(), loaded.counter().toMap());
+        assertEquals(snapshot.counter().total(), loaded.counter().total());
+        assertEquals(7, loaded.counter().count("na\u00efve"));
+    }
+
+    /**
+     * Test a snapshot cut short anywhere is refused.
+     *
+     * @throws IOException
+     *             if a file cannot be written or read
+     */
+    @Test
+    public void testTruncated() throws IOException {
+        byte[] bytes = snapshotBytes();
+        assertTrue(!refused(bytes));
+        for (int length = 0; length < bytes.length; length++) {
+            assertTrue(refused(Arrays.copyOf(bytes, length)));
+        }
+    }
+
+    /**
+     * Test a snapshot with a bad header, a bad number of words or a bad word
+     * length is refused.
+     *
+     * @throws IOException
+     *             if a file cannot be written or read
+     */
+    @Test
+    public void testCorrupt() throws IOException {
+        byte[] bytes = snapshotBytes();
+        assertTrue(refused(withInt(bytes, 0, 0)));
+        assertTrue(refused(withInt(bytes, Integer.BYTES, 2)));
+        assertTrue(refused(withInt(bytes, 2 * Integer.BYTES, -1)));
+        assertTrue(refused(withInt(bytes, WORDS_AT, -1)));
+        assertTrue(refused(withInt(bytes, WORDS_AT, Integer.MAX_VALUE)));
+        assertTrue(refused(withInt(bytes, FIRST_LENGTH_AT, -1)));
+        assertTrue(refused(withInt(bytes, FIRST_LENGTH_AT,
+                Integer.MAX_VALUE)));
+    }
+
+    /**
+     * Test updating twice, with a word cut in half by the end of the file at
+     * the first update, makes the same tag cloud and snapshot as counting
+     * the final file from scratch.
+     *
+     * @throws IOException
+     *             if a file cannot be read or written
+     */
+    @Test
+    public void testIncrementalMatchesRecount() throws IOException {
+        Path input = tempFile(".txt");
+        Path snapshotFile = tempFile(".counts");
+        Files.write(input, "Alpha beta, alpha gam".getBytes(
+                StandardCharsets.UTF_8));
+        update(input, snapshotFile);
+        CountSnapshot first = CountSnapshot.load(snapshotFile);
+        assertEquals("Alpha beta, alpha ".length(), first.offset());
+        assertEquals(0, first.counter().count("gam"));
+
+        Files.write(input, "ma delta\nbeta\n".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        String incremental = update(input, snapshotFile);
+
+        Path freshSnapshot = tempFile(".counts");
+        String recount = update(input, freshSnapshot);
+        assertEquals(recount, incremental);
+
+        CountSnapshot updated = CountSnapshot.load(snapshotFile);
+        CountSnapshot counted = CountSnapshot.load(freshSnapshot);
+        assertEquals(Files.size(input), updated.offset());
+        assertEquals(counted.counter().toMap(), updated.counter().toMap());
+        assertEquals(1, updated.counter().count("gamma"));
+        assertEquals(0, updated.counter().count("gam"));
+        assertEquals(0, updated.counter().count("ma"));
+    }
+
+}
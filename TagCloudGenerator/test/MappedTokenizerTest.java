@@ -0,0 +1,210 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code MappedTokenizer}, with small windows so words
+ * run from one window into the next.
+ */
+public final class MappedTokenizerTest {
+
+    /**
+     * Separator table the program uses.
+     */
+    private static final boolean[] SEPARATORS = MappedTokenizer
+            .separatorTable(TagCloudGenerator
+                    .generateBreaks(TagCloudGenerator.SEPARATORS));
+
+    /**
+     * Collects the words it is handed as {@code String}s.
+     */
+    private static final class ListSink implements MappedTokenizer.WordSink {
+
+        /**
+         * The words, in the order they were handed out.
+         */
+        private final List<String> words = new ArrayList<String>();
+
+        @Override
+        public void word(ByteBuffer text, int start, int end) {
+            byte[] bytes = new byte[end - start];
+            for (int i = start; i < end; i++) {
+                bytes[i - start] = text.get(i);
+            }
+            this.words.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+
+    }
+
+    /**
+     * Writes {@code text} to a new temporary file.
+     *
+     * @param text
+     *            the contents of the file
+     * @return the file
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private static Path textFile(String text) throws IOException {
+        Path file = Files.createTempFile("tokenizer", ".txt");
+        file.toFile().deleteOnExit();
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * Returns the words of {@code file}, mapping at most {@code windowSize}
+     * bytes at once.
+     *
+     * @param file
+     *            the file
+     * @param windowSize
+     *            largest number of bytes mapped at once
+     * @return the words, in file order
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private static List<String> words(Path file, int windowSize)
+            throws IOException {
+        ListSink sink = new ListSink();
+        long end = Files.size(file);
+        long resume = MappedTokenizer.tokenize(file, 0, end, SEPARATORS, sink,
+                windowSize);
+        MappedTokenizer.tokenizeRest(file, resume, end, sink, windowSize);
+        return sink.words;
+    }
+
+    /**
+     * Test the separator table has the line terminators and the program's
+     * separators, and nothing else.
+     */
+    @Test
+    public void testSeparatorTable() {
+        assertTrue(SEPARATORS['\n']);
+        assertTrue(SEPARATORS['\r']);
+        assertTrue(SEPARATORS[' ']);
+        assertTrue(SEPARATORS['-']);
+        assertFalse(SEPARATORS['a']);
+        assertFalse(SEPARATORS['Z']);
+        assertFalse(SEPARATORS[0xC3]);
+    }
+
+    /**
+     * Test an empty file has no words.
+     *
+     * @throws IOException
+     *             if the file cannot be written or read
+     */
+    @Test
+    public void testEmptyFile() throws IOException {
+        Path file = textFile("");
+        ListSink sink = new ListSink();
+        assertEquals(0, MappedTokenizer.tokenize(file, SEPARATORS, sink));
+        assertEquals(0, sink.words.size());
+        assertEquals(0, MappedTokenizer.tokenize(file, 0, 0, SEPARATORS,
+                sink));
+        assertEquals(0, sink.words.size());
+    }
+
+    /**
+     * Test a file ending in the middle of a word: the scan leaves the word
+     * out and returns where it starts, and the rest reports it.
+     *
+     * @throws IOException
+     *             if the file cannot be written or read
+     */
+    @Test
+    public void testEndsInWord() throws IOException {
+        Path file = textFile("alpha beta");
+        ListSink sink = new ListSink();
+        long resume = MappedTokenizer.tokenize(file, 0, Files.size(file),
+                SEPARATORS, sink);
+        assertEquals(6, resume);
+        assertEquals(Arrays.asList("alpha"), sink.words);
+        assertEquals(10, MappedTokenizer.tokenizeRest(file, resume, 10, sink));
+        assertEquals(Arrays.asList("alpha", "beta"), sink.words);
+
+        sink = new ListSink();
+        assertEquals(10, MappedTokenizer.tokenize(file, SEPARATORS, sink));
+        assertEquals(Arrays.asList("alpha", "beta"), sink.words);
+    }
+
+    /**
+     * Test a file ending with a separator leaves nothing for the rest.
+     *
+     * @throws IOException
+     *             if the file cannot be written or read
+     */
+    @Test
+    public void testEndsWithSeparator() throws IOException {
+        Path file = textFile("alpha beta.\n");
+        ListSink sink = new ListSink();
+        assertEquals(12, MappedTokenizer.tokenize(file, 0, 12, SEPARATORS,
+                sink));
+        assertEquals(Arrays.asList("alpha", "beta"), sink.words);
+    }
+
+    /**
+     * Test Windows line endings separate words and make no words of their
+     * own.
+     *
+     * @throws IOException
+     *             if the file cannot be written or read
+     */
+    @Test
+    public void testCrLf() throws IOException {
+        Path file = textFile("one\r\ntwo three\r\n\r\nfour\r\n");
+        assertEquals(Arrays.asList("one", "two", "three", "four"),
+                words(file, 1 << 20));
+    }
+
+    /**
+     * Test words running from one window into the next come out whole, for
+     * every window size up to the size of the file, as long as no word is
+     * longer than a window.
+     *
+     * @throws IOException
+     *             if the file cannot be written or read
+     */
+    @Test
+    public void testWordStraddlesWindow() throws IOException {
+        String text = "It was the best of times, it was the worst of times;"
+                + " it was the age of wisdom\r\nit was the age of foolishness";
+        Path file = textFile(text);
+        List<String> expected = words(file, 1 << 20);
+        assertEquals(24, expected.size());
+        assertEquals("foolishness", expected.get(expected.size() - 1));
+        for (int window = "foolishness".length() + 1; window <= text
+                .length(); window++) {
+            assertEquals(expected, words(file, window));
+        }
+    }
+
+    /**
+     * Test a multi-byte UTF-8 character running from one window into the
+     * next stays inside its word.
+     *
+     * @throws IOException
+     *             if the file cannot be written or read
+     */
+    @Test
+    public void testUtf8Straddles() throws IOException {
+        Path file = textFile("caf\u00e9 na\u00efve");
+        for (int window = 6; window <= 12; window++) {
+            assertEquals(Arrays.asList("caf\u00e9", "na\u00efve"),
+                    words(file, window));
+        }
+    }
+
+}
@@ -0,0 +1,331 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.set.Set;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+
+/**
+ * JUnit test fixture for the counting paths of {@code TagCloudGenerator}:
+ * {@code readInput}, {@code readInputParallel} and {@code readInputMapped}
+ * must count every input the same way and so produce the same tag cloud, and
+ * {@code collectionEnd} and {@code foldedWord} must split and fold a line
+ * the way lower-casing it and then calling {@code nextCollection} did.
+ */
+public final class TagCloudGeneratorTest {
+
+    /**
+     * Number of words in the tag clouds compared.
+     */
+    private static final int TOP_COUNT = 100;
+
+    /**
+     * Number of threads for the parallel path.
+     */
+    private static final int THREADS = 4;
+
+    /**
+     * Breaks the program counts with.
+     */
+    private static final Set<Character> BREAKS = TagCloudGenerator
+            .generateBreaks(TagCloudGenerator.SEPARATORS);
+
+    /**
+     * Writes {@code text} to a new temporary file.
+     *
+     * @param text
+     *            the contents of the file
+     * @return the file
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private static Path textFile(String text) throws IOException {
+        Path file = Files.createTempFile("tagcloud", ".txt");
+        file.toFile().deleteOnExit();
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * Counts {@code file} with {@code readInput}.
+     *
+     * @param file
+     *            the input file
+     * @return map of words and counts
+     */
+    private static Map<String, Integer> sequential(String file) {
+        SimpleReader input = new SimpleReader1L(file);
+        Map<String, Integer> counts = TagCloudGenerator.readInput(BREAKS,
+                input, TagCloudMetrics.DISABLED);
+        input.close();
+        return counts;
+    }
+
+    /**
+     * Counts {@code file} with {@code readInputParallel}.
+     *
+     * @param file
+     *            the input file
+     * @return map of words and counts
+     */
+    private static Map<String, Integer> parallel(String file) {
+        SimpleReader input = new SimpleReader1L(file);
+        Map<String, Integer> counts = TagCloudGenerator.readInputParallel(
+                BREAKS, input, THREADS, TagCloudMetrics.DISABLED);
+        input.close();
+        return counts;
+    }
+
+    /**
+     * Counts {@code file} with {@code readInputMapped}.
+     *
+     * @param file
+     *            the input file
+     * @return map of words and counts
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private static Map<String, Integer> mapped(String file)
+            throws IOException {
+        return TagCloudGenerator.readInputMapped(file,
+                MappedTokenizer.separatorTable(BREAKS),
+                TagCloudMetrics.DISABLED);
+    }
+
+    /**
+     * Returns the tag cloud page of the {@code TOP_COUNT} most frequent
+     * words of {@code counts}.
+     *
+     * @param counts
+     *            map of words and counts
+     * @return the HTML page
+     * @throws IOException
+     *             if writing fails
+     */
+    private static String page(Map<String, Integer> counts)
+            throws IOException {
+        int n = Math.min(TOP_COUNT, counts.size());
+        StringWriter html = new StringWriter();
+        try (TagCloudWriter output = new TagCloudWriter(html)) {
+            output.openDocument("input.txt", n);
+            TagCloudGenerator.sortByCountAndLetter(output, n, counts,
+                    TagCloudMetrics.DISABLED);
+            output.closeDocument();
+        }
+        return html.toString();
+    }
+
+    /**
+     * Checks that all three paths count {@code file} the same way and make
+     * the same page of it.
+     *
+     * @param file
+     *            the input file
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private static void assertSameCloud(String file) throws IOException {
+        Map<String, Integer> counts = sequential(file);
+        Map<String, Integer> parallelCounts = parallel(file);
+        Map<String, Integer> mappedCounts = mapped(file);
+        assertEquals(counts, parallelCounts);
+        assertEquals(counts, mappedCounts);
+        String html = page(counts);
+        assertEquals(html, page(parallelCounts));
+        assertEquals(html, page(mappedCounts));
+    }
+
+    /**
+     * Returns the words of {@code line} the way {@code readInput} used to find
+     * them: the whole line in lower case, split by {@code nextCollection}.
+     *
+     * @param line
+     *            the line
+     * @return the words, in order
+     */
+    private static List<String> oldWords(String line) {
+        List<String> words = new ArrayList<String>();
+        String lower = line.toLowerCase(Locale.ROOT);
+        int pos = 0;
+        while (pos < lower.length()) {
+            String col = TagCloudGenerator.nextCollection(lower, pos, BREAKS);
+            if (!BREAKS.contains(col.charAt(0))) {
+                words.add(col);
+            }
+            pos += col.length();
+        }
+        return words;
+    }
+
+    /**
+     * Returns the words of {@code line} the way {@code readInput} finds them
+     * now: split by {@code collectionEnd}, each word folded on its own by
+     * {@code foldedWord}.
+     *
+     * @param line
+     *            the line
+     * @return the words, in order
+     */
+    private static List<String> newWords(String line) {
+        List<String> words = new ArrayList<String>();
+        int pos = 0;
+        while (pos < line.length()) {
+            int end = TagCloudGenerator.collectionEnd(line, pos, BREAKS);
+            if (!BREAKS.contains(line.charAt(pos))) {
+                words.add(TagCloudGenerator.foldedWord(line, pos, end));
+            }
+            pos = end;
+        }
+        return words;
+    }
+
+    /**
+     * Checks that {@code line} splits into {@code expected}, both the old way
+     * and the new one.
+     *
+     * @param line
+     *            the line
+     * @param expected
+     *            its words, in lower case
+     */
+    private static void assertSameWords(String line, String... expected) {
+        assertEquals(Arrays.asList(expected), oldWords(line));
+        assertEquals(Arrays.asList(expected), newWords(line));
+    }
+
+    /**
+     * Test the case of ASCII words.
+     */
+    @Test
+    public void testFoldAscii() {
+        assertSameWords("The CAT sat on tHe mat", "the", "cat", "sat", "on",
+                "the", "mat");
+        assertSameWords("already lower case", "already", "lower", "case");
+        assertEquals("word", TagCloudGenerator.foldedWord("a WoRd!", 2, 6));
+        assertEquals("", TagCloudGenerator.foldedWord("ABC", 1, 1));
+        String lower = "lower";
+        assertTrue(lower == TagCloudGenerator.foldedWord(lower, 0, 5));
+    }
+
+    /**
+     * Test the case of words with letters that are not ASCII, alone and
+     * mixed with ASCII letters.
+     */
+    @Test
+    public void testFoldNonAscii() {
+        assertSameWords("\u00c9COLE Stra\u00dfe \u00c0 la CR\u00c8ME",
+                "\u00e9cole", "stra\u00dfe", "\u00e0", "la", "cr\u00e8me");
+        assertSameWords("\u039a\u0391\u039b\u0397 \u041c\u0418\u0420",
+                "\u03ba\u03b1\u03bb\u03b7", "\u043c\u0438\u0440");
+        assertSameWords("\u0130stanbul, IZMIR", "i\u0307stanbul", "izmir");
+        assertEquals("na\u00efve",
+                TagCloudGenerator.foldedWord("(NA\u00cfVE)", 1, 6));
+    }
+
+    /**
+     * Test separators at the start and end of a line, runs of separators,
+     * and lines with no words at all.
+     */
+    @Test
+    public void testFoldSeparators() {
+        assertSameWords("...Hello, World!", "hello", "world");
+        assertSameWords("  (Leading) and trailing --  ", "leading", "and",
+                "trailing");
+        assertSameWords("!\u00c9t\u00c9?", "\u00e9t\u00e9");
+        assertSameWords("x", "x");
+        assertSameWords("1, 2; 3.");
+        assertSameWords("");
+        assertEquals(3, TagCloudGenerator.collectionEnd("...Hi", 0, BREAKS));
+        assertEquals(5, TagCloudGenerator.collectionEnd("...Hi", 3, BREAKS));
+    }
+
+    /**
+     * Test the counts of a small input, with mixed case, separators, an empty
+     * line and a last line without a line terminator.
+     *
+     * @throws IOException
+     *             if the file cannot be written or read
+     */
+    @Test
+    public void testSmallInput() throws IOException {
+        Path file = textFile("The cat, the CAT and the hat.\n"
+                + "A hat-trick: 3 cats!\n\nthe end");
+        Map<String, Integer> expected = new Map1L<String, Integer>();
+        expected.add("the", 4);
+        expected.add("cat", 2);
+        expected.add("and", 1);
+        expected.add("hat", 2);
+        expected.add("a", 1);
+        expected.add("trick", 1);
+        expected.add("cats", 1);
+        expected.add("end", 1);
+        assertEquals(expected, sequential(file.toString()));
+        assertSameCloud(file.toString());
+    }
+
+    /**
+     * Test an input with Windows line endings.
+     *
+     * @throws IOException
+     *             if the file cannot be written or read
+     */
+    @Test
+    public void testCrLfInput() throws IOException {
+        Path file = textFile("one Two\r\nthree\r\n\r\ntwo ONE\r\n");
+        assertSameCloud(file.toString());
+        assertEquals(Integer.valueOf(2),
+                sequential(file.toString()).value("two"));
+    }
+
+    /**
+     * Test an empty input.
+     *
+     * @throws IOException
+     *             if the file cannot be written or read
+     */
+    @Test
+    public void testEmptyInput() throws IOException {
+        Path file = textFile("");
+        assertSameCloud(file.toString());
+        assertEquals(0, sequential(file.toString()).size());
+    }
+
+    /**
+     * Test a short novel, small enough that the parallel path counts it in
+     * few chunks.
+     *
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    @Test
+    public void testAlice() throws IOException {
+        assertSameCloud("data/alice.txt");
+    }
+
+    /**
+     * Test a long novel, which the parallel path splits into many chunks and
+     * merges back.
+     *
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    @Test
+    public void testLesMiserables() throws IOException {
+        assertSameCloud("data/lesmiz.txt");
+    }
+
+}
@@ -0,0 +1,184 @@
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * JUnit test fixture for {@code WordCounter}, checked against counts kept in
+ * a {@code Map1L}.
+ */
+public final class WordCounterTest {
+
+    /**
+     * Adds {@code amount} to the count of {@code word} in {@code counts}.
+     *
+     * @param counts
+     *            the reference counts
+     * @param word
+     *            the word
+     * @param amount
+     *            how much to add
+     */
+    private static void increment(Map<String, Integer> counts, String word,
+            int amount) {
+        if (counts.hasKey(word)) {
+            counts.replaceValue(word, counts.value(word) + amount);
+        } else {
+            counts.add(word, amount);
+        }
+    }
+
+    /**
+     * Returns the sum of the counts in {@code counts}.
+     *
+     * @param counts
+     *            the reference counts
+     * @return the sum of the values
+     */
+    private static long total(Map<String, Integer> counts) {
+        long total = 0;
+        for (Map.Pair<String, Integer> pair : counts) {
+            total += pair.value();
+        }
+        return total;
+    }
+
+    /**
+     * Test an empty counter.
+     */
+    @Test
+    public void testEmpty() {
+        WordCounter counter = new WordCounter();
+        assertEquals(0, counter.size());
+        assertEquals(0, counter.total());
+        assertEquals(0, counter.count("missing"));
+        assertEquals(new Map1L<String, Integer>(), counter.toMap());
+    }
+
+    /**
+     * Test counting repeated words one at a time and by amounts.
+     */
+    @Test
+    public void testIncrement() {
+        WordCounter counter = new WordCounter();
+        counter.increment("red");
+        counter.increment("green");
+        counter.increment("red");
+        counter.increment("blue", 5);
+        counter.increment("red", 2);
+        assertEquals(3, counter.size());
+        assertEquals(10, counter.total());
+        assertEquals(4, counter.count("red"));
+        assertEquals(1, counter.count("green"));
+        assertEquals(5, counter.count("blue"));
+        assertEquals(0, counter.count("yellow"));
+    }
+
+    /**
+     * Test a counter sized for no words grows many times past its load
+     * limit and keeps every count.
+     */
+    @Test
+    public void testGrowth() {
+        final int count = 5000;
+        WordCounter counter = new WordCounter(0);
+        Map<String, Integer> expected = new Map1L<String, Integer>();
+        for (int i = 0; i < 2 * count; i++) {
+            String word = "word" + (i % count);
+            counter.increment(word);
+            increment(expected, word, 1);
+        }
+        assertEquals(count, counter.size());
+        assertEquals(2 * count, counter.total());
+        for (int i = 0; i < count; i++) {
+            assertEquals(2, counter.count("word" + i));
+        }
+        assertEquals(expected, counter.toMap());
+    }
+
+    /**
+     * Test words whose hash codes are equal still count apart.
+     */
+    @Test
+    public void testEqualHashCodes() {
+        // "Aa" and "BB" have the same hashCode
+        WordCounter counter = new WordCounter(0);
+        counter.increment("Aa");
+        counter.increment("BB", 2);
+        counter.increment("AaAa", 3);
+        counter.increment("BBBB", 4);
+        counter.increment("AaBB", 5);
+        assertEquals(5, counter.size());
+        assertEquals(1, counter.count("Aa"));
+        assertEquals(2, counter.count("BB"));
+        assertEquals(3, counter.count("AaAa"));
+        assertEquals(4, counter.count("BBBB"));
+        assertEquals(5, counter.count("AaBB"));
+        assertEquals(0, counter.count("BBAa"));
+    }
+
+    /**
+     * Test merging sums the counts of words in both counters, keeps the
+     * others, and leaves the source empty but usable.
+     */
+    @Test
+    public void testMergeFrom() {
+        final int count = 1000;
+        WordCounter counter = new WordCounter();
+        WordCounter source = new WordCounter(0);
+        Map<String, Integer> expected = new Map1L<String, Integer>();
+        for (int i = 0; i < count; i++) {
+            counter.increment("word" + i, i + 1);
+            increment(expected, "word" + i, i + 1);
+        }
+        for (int i = count / 2; i < count + count / 2; i++) {
+            source.increment("word" + i, 2);
+            increment(expected, "word" + i, 2);
+        }
+        counter.mergeFrom(source);
+        assertEquals(expected, counter.toMap());
+        assertEquals(expected.size(), counter.size());
+        assertEquals(total(expected), counter.total());
+
+        assertEquals(0, source.size());
+        assertEquals(0, source.total());
+        assertEquals(0, source.count("word" + count));
+        assertEquals(new Map1L<String, Integer>(), source.toMap());
+        source.increment("again");
+        assertEquals(1, source.count("again"));
+        assertEquals(1, source.size());
+    }
+
+    /**
+     * Test merging an empty counter changes nothing.
+     */
+    @Test
+    public void testMergeFromEmpty() {
+        WordCounter counter = new WordCounter();
+        counter.increment("one");
+        counter.mergeFrom(new WordCounter());
+        assertEquals(1, counter.size());
+        assertEquals(1, counter.total());
+        assertEquals(1, counter.count("one"));
+    }
+
+    /**
+     * Test forEach hands out every word once, with its count.
+     */
+    @Test
+    public void testForEach() {
+        final int count = 300;
+        WordCounter counter = new WordCounter(0);
+        for (int i = 0; i < count; i++) {
+            counter.increment("word" + i, i % 7 + 1);
+        }
+        final Map<String, Integer> seen = new Map1L<String, Integer>();
+        counter.forEach((word, n) -> seen.add(word, n));
+        assertEquals(counter.toMap(), seen);
+        assertEquals(count, seen.size());
+        assertEquals(counter.total(), total(seen));
+    }
+
+}
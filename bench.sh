@@ -0,0 +1,52 @@
+#!/bin/sh
+#
+# Compiles the JMH benchmarks of one project, with its sources, and runs
+# them.
+#
+# Usage, from the repository root:
+#
+#   ./bench.sh <project> <benchmark> [JMH options...]
+#
+# e.g.
+#
+#   ./bench.sh TagCloudGenerator TagCloudBenchmark -prof gc
+#   ./bench.sh MapWithHashing/MapWithHashing MapBenchmark -prof gc
+#   ./bench.sh SortingMachineWithHeapsort SortingMachineBenchmark
+#
+# <project> is the directory holding src/ and bench/; the benchmarks run from
+# there, so relative paths like data/ resolve as they do in Eclipse. The jars
+# are taken from lib/ in the repository root, or from $BENCH_LIB if it is
+# set: components.jar, jmh-core, jmh-generator-annprocess, and the jars JMH
+# needs (jopt-simple, commons-math3). The classes go to a temporary directory
+# that is removed afterwards, so bin/ is left alone.
+
+set -e
+
+if [ $# -lt 2 ]; then
+    echo "Usage: $0 <project> <benchmark> [JMH options...]" >&2
+    exit 2
+fi
+
+root=$(cd "$(dirname "$0")" && pwd)
+project=$(cd "$1" && pwd)
+benchmark=$2
+shift 2
+
+lib=${BENCH_LIB:-$root/lib}
+if ! ls "$lib"/*.jar > /dev/null 2>&1; then
+    echo "$0: no jars in $lib (set BENCH_LIB to the directory with" \
+        "components.jar and the JMH jars)" >&2
+    exit 2
+fi
+classpath=$(ls "$lib"/*.jar | tr '\n' ':')
+
+classes=$(mktemp -d)
+trap 'rm -rf "$classes"' EXIT
+
+# The JMH annotation processor writes the generated benchmark classes and
+# META-INF/BenchmarkList next to the compiled ones
+javac -nowarn -cp "$classpath" -processorpath "$classpath" -d "$classes" \
+    $(find "$project/src" "$project/bench" -name '*.java')
+
+cd "$project"
+java -cp "$classes:$classpath" org.openjdk.jmh.Main "$benchmark" "$@"